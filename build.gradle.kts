@@ -17,8 +17,18 @@ dependencies {
     // Test dependencies
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Runs the end-to-end render benchmark, pass options with -PbenchmarkArgs="maxObjects=100000 runs=5"
+tasks.register<JavaExec>("benchmark") {
+    group = "verification"
+    description = "Runs the end-to-end render benchmark and writes benchmark_results.csv"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("ch.hslu.raytracer.benchmark.RenderBenchmark")
+    args = (findProperty("benchmarkArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+}
@@ -1,8 +1,8 @@
 package ch.hslu.raytracer;
 
-import ch.hslu.raytracer.core.Ray;
 import ch.hslu.raytracer.core.Vector;
 import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.monitoring.ImageEncodeEvent;
 import ch.hslu.raytracer.scene.Camera;
 import ch.hslu.raytracer.scene.Scene;
 import ch.hslu.raytracer.scene.SceneBuilder;
@@ -12,9 +12,9 @@ import java.awt.Color;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -36,66 +36,107 @@ public class RayTracer {
     }
 
     /**
-     * Renders a scene using the specified camera and settings.
+     * Renders a scene using the specified camera and settings and saves it to the output file.
      *
      * @param scene The scene to render
      * @param camera The camera to use for rendering
      * @param settings The render settings
      */
     public void renderScene(Scene scene, Camera camera, RenderSettings settings) {
-        // Set the max reflection depth in the scene
-        scene.setMaxReflectionDepth(settings.getMaxReflectionDepth());
-
-        // Create the image
-        BufferedImage image = new BufferedImage(
-                settings.getWidth(),
-                settings.getHeight(),
-                BufferedImage.TYPE_INT_RGB
-        );
-
-        // Create a list of all scan lines and shuffle them randomly for better load balancing
-        List<Integer> scanLines = new ArrayList<>(settings.getHeight());
-        for (int y = 0; y < settings.getHeight(); y++) {
-            scanLines.add(y);
-        }
-        Collections.shuffle(scanLines);
+        BufferedImage image = render(scene, camera, settings);
 
-        // Divide the scan lines among threads
-        int linesPerThread = (int) Math.ceil((double) settings.getHeight() / settings.getNumThreads());
-        List<List<Integer>> threadTasks = new ArrayList<>(settings.getNumThreads());
+        // Don't write a half-finished image if the render was cancelled
+        if (Thread.currentThread().isInterrupted()) {
+            return;
+        }
 
-        for (int i = 0; i < settings.getNumThreads(); i++) {
-            int startIdx = i * linesPerThread;
-            int endIdx = Math.min(startIdx + linesPerThread, settings.getHeight());
+        writeImage(image, settings);
+    }
 
-            if (startIdx < settings.getHeight()) {
-                threadTasks.add(scanLines.subList(startIdx, endIdx));
-            }
+    /**
+     * Renders a scene from several views and saves each view to the output file of its settings.
+     * All views share one pool of workers, sized to the largest thread count of the settings, and
+     * each finished view is saved while the remaining views are still being traced.
+     * <p>
+     * Interrupting the calling thread cancels the views that haven't finished yet.
+     *
+     * @param scene The scene to render, shared by all views
+     * @param views The cameras and settings of the views
+     */
+    public void renderViews(Scene scene, List<RenderView> views) {
+        int numThreads = 1;
+        for (RenderView view : views) {
+            numThreads = Math.max(numThreads, view.settings().getNumThreads());
         }
 
-        // Use CountDownLatch to wait for all threads to complete
-        CountDownLatch latch = new CountDownLatch(threadTasks.size());
-        ExecutorService executor = Executors.newFixedThreadPool(settings.getNumThreads());
+        // A single encoder is enough, views finish one after another
+        ExecutorService encoder = Executors.newSingleThreadExecutor();
+        try (RenderEngine engine = new RenderEngine(numThreads)) {
+            List<CompletableFuture<BufferedImage>> images = engine.render(scene, views);
+            List<CompletableFuture<Void>> writes = new ArrayList<>(views.size());
+            for (int i = 0; i < views.size(); i++) {
+                RenderSettings settings = views.get(i).settings();
+                writes.add(images.get(i).thenAcceptAsync(image -> writeImage(image, settings), encoder));
+            }
 
-        // Submit rendering tasks to the thread pool
-        for (List<Integer> task : threadTasks) {
-            executor.submit(new RenderTask(task, image, scene, camera, settings, latch));
+            try {
+                CompletableFuture.allOf(writes.toArray(new CompletableFuture<?>[0])).get();
+            } catch (InterruptedException e) {
+                for (CompletableFuture<BufferedImage> image : images) {
+                    image.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                System.err.println("Rendering cancelled: " + e.getMessage());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Rendering failed", e.getCause());
+            }
+        } finally {
+            encoder.shutdown();
         }
+    }
 
-        // Wait for all threads to finish
-        try {
-            latch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            System.err.println("Rendering interrupted: " + e.getMessage());
+    /**
+     * Renders a scene using the specified camera and settings and returns the image in memory.
+     * Only the render region of the settings is traced, the camera projection still covers the full frame.
+     * <p>
+     * With a time budget, the returned image is the best one achievable within the budget.
+     * Interrupting the calling thread cancels the render and stops all workers.
+     * Callers rendering repeatedly should keep a {@link RenderEngine} instead, this method
+     * creates and closes a new one for every call.
+     *
+     * @param scene The scene to render
+     * @param camera The camera to use for rendering
+     * @param settings The render settings
+     * @return The rendered image, sized to the render region
+     */
+    public BufferedImage render(Scene scene, Camera camera, RenderSettings settings) {
+        try (RenderEngine engine = new RenderEngine(settings.getNumThreads())) {
+            RenderJob job = engine.submit(scene, camera, settings);
+            try {
+                return job.getFuture().get();
+            } catch (InterruptedException e) {
+                job.getFuture().cancel(true);
+                Thread.currentThread().interrupt();
+                System.err.println("Rendering cancelled: " + e.getMessage());
+                return job.getImage();
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Rendering failed", e.getCause());
+            }
         }
+    }
 
-        // Shut down the executor
-        executor.shutdown();
-
-        // Save the image
+    private void writeImage(BufferedImage image, RenderSettings settings) {
+        ImageEncodeEvent event = new ImageEncodeEvent();
+        event.begin();
         try {
             ImageIO.write(image, settings.getOutputFormat(), settings.getOutputFile());
+            if (event.shouldCommit()) {
+                event.format = settings.getOutputFormat();
+                event.file = settings.getOutputFile().getPath();
+                event.width = image.getWidth();
+                event.height = image.getHeight();
+                event.commit();
+            }
         } catch (IOException e) {
             System.err.println("Error saving image: " + e.getMessage());
             e.printStackTrace();
@@ -128,55 +169,4 @@ public class RayTracer {
                 .addLight(new Vector(3, 3, -3), new Color(200, 200, 255), 0.8)
                 .build();
     }
-
-    /**
-     * Task for rendering a set of scan lines.
-     */
-    private static class RenderTask implements Runnable {
-        private final List<Integer> scanLines;
-        private final BufferedImage image;
-        private final Scene scene;
-        private final Camera camera;
-        private final RenderSettings settings;
-        private final CountDownLatch latch;
-
-        public RenderTask(List<Integer> scanLines, BufferedImage image, Scene scene,
-                          Camera camera, RenderSettings settings, CountDownLatch latch) {
-            this.scanLines = scanLines;
-            this.image = image;
-            this.scene = scene;
-            this.camera = camera;
-            this.settings = settings;
-            this.latch = latch;
-        }
-
-        @Override
-        public void run() {
-            try {
-                // Calculate aspect ratio
-                double aspectRatio = (double) settings.getWidth() / settings.getHeight();
-
-                for (int y : scanLines) {
-                    for (int x = 0; x < settings.getWidth(); x++) {
-                        // Convert pixel coordinates to normalized device coordinates with aspect ratio correction
-                        double nx = ((x - settings.getWidth() / 2.0) / (settings.getWidth() / 2.0)) * aspectRatio;
-                        double ny = -(y - settings.getHeight() / 2.0) / (settings.getHeight() / 2.0);
-
-                        // Create a ray from the camera
-                        Ray ray = camera.createRay(nx, ny);
-
-                        // Trace the ray through the scene
-                        Color pixelColor = scene.trace(ray);
-
-                        // Synchronize access to the shared image
-                        synchronized (image) {
-                            image.setRGB(x, y, pixelColor.getRGB());
-                        }
-                    }
-                }
-            } finally {
-                latch.countDown();
-            }
-        }
-    }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package ch.hslu.raytracer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the time budget of a single render and lets workers stop cooperatively
+ * once the deadline has passed or the render has been cancelled.
+ */
+public class RenderBudget {
+    private static final int MIN_COMPLETED_LINES = 8; // Lines a pass finishes before its projection is trusted
+
+    private final long budgetNanos;
+    private final long startTime;
+    private final AtomicInteger startedLines = new AtomicInteger();
+    private final AtomicInteger completedLines = new AtomicInteger();
+    private volatile long passStartTime;
+    private volatile int totalLines = 1;
+    private volatile boolean stopped;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a budget starting now.
+     *
+     * @param budgetMillis The time budget in milliseconds, 0 for no limit
+     */
+    public RenderBudget(long budgetMillis) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, budgetMillis));
+        this.startTime = System.nanoTime();
+        this.passStartTime = startTime;
+    }
+
+    /**
+     * Checks whether this render has a time limit at all.
+     */
+    public boolean isLimited() {
+        return budgetNanos > 0;
+    }
+
+    /**
+     * Checks whether workers should stop tracing, either because the render was
+     * cancelled or because the deadline has passed.
+     */
+    public boolean isStopped() {
+        if (!stopped && isLimited() && remainingNanos() <= 0) {
+            stopped = true;
+        }
+        return stopped;
+    }
+
+    /**
+     * Stops the render, workers finish the pixel they are tracing and exit.
+     */
+    public void cancel() {
+        cancelled = true;
+        stopped = true;
+    }
+
+    /**
+     * Checks whether the render was cancelled, unlike {@link #isStopped()} regardless of the deadline.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Resets the progress counters for a new pass over the image, the pass is projected from now on.
+     *
+     * @param totalLines The number of scan lines in the pass
+     */
+    public void startPass(int totalLines) {
+        this.totalLines = Math.max(1, totalLines);
+        startedLines.set(0);
+        completedLines.set(0);
+        passStartTime = System.nanoTime();
+    }
+
+    /**
+     * Records that a worker has started a scan line of the current pass.
+     */
+    public void lineStarted() {
+        startedLines.incrementAndGet();
+    }
+
+    /**
+     * Records that a worker has finished a scan line of the current pass.
+     */
+    public void lineCompleted() {
+        completedLines.incrementAndGet();
+    }
+
+    /**
+     * Gets the reflection depth a worker should use for its next scan line. When the
+     * current pass is projected to overrun what is left of the budget, the depth is lowered
+     * in proportion to the expected overrun so the remaining lines get cheaper.
+     * <p>
+     * The projection starts once every worker has finished a line and at least a few lines are done.
+     * Lines still being traced count as half done, since the workers run them in parallel.
+     *
+     * @param maxReflectionDepth The reflection depth requested by the render settings
+     * @return The reflection depth to use
+     */
+    public int reflectionDepth(int maxReflectionDepth) {
+        if (!isLimited()) {
+            return maxReflectionDepth;
+        }
+        int completed = completedLines.get();
+        int inFlight = Math.max(0, startedLines.get() - completed);
+        if (completed < Math.max(MIN_COMPLETED_LINES, inFlight)) {
+            return maxReflectionDepth;
+        }
+
+        long passStart = passStartTime;
+        double elapsed = System.nanoTime() - passStart;
+        double projected = elapsed * totalLines / (completed + inFlight / 2.0);
+        double passBudget = budgetNanos - (passStart - startTime);
+        if (projected <= passBudget) {
+            return maxReflectionDepth;
+        }
+        return Math.max(1, (int) (maxReflectionDepth * Math.max(0, passBudget) / projected));
+    }
+
+    private long remainingNanos() {
+        return budgetNanos - (System.nanoTime() - startTime);
+    }
+}
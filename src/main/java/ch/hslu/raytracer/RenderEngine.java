@@ -0,0 +1,329 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long-lived renderer that owns one pool of worker threads and reuses it for every render.
+ * <p>
+ * Jobs are kept in a round-robin queue and each worker takes a single tile from the job at the head
+ * before putting the job back at the tail, so concurrent renders interleave their tiles fairly.
+ * Batches of views are the exception, they are started one view at a time, see {@link #render(Scene, List)}.
+ * <p>
+ * Every engine registers itself as a {@link RenderEngineMXBean} while it is open.
+ */
+public class RenderEngine implements AutoCloseable, RenderEngineMXBean {
+    private static final AtomicInteger ENGINE_COUNT = new AtomicInteger();
+    private static final long RATE_INTERVAL_NANOS = 1_000_000_000L; // Shortest interval the ray rate is averaged over
+
+    private final int numThreads;
+    private final ExecutorService executor;
+    private final BlockingQueue<RenderJob> queue = new LinkedBlockingQueue<>();
+    private final Set<RenderJob> activeJobs = ConcurrentHashMap.newKeySet();
+    private final LongAdder totalRays = new LongAdder();
+    private final AtomicLong completedRenders = new AtomicLong();
+    private final ObjectName objectName;
+    private final AtomicReference<RateSample> rateSample = new AtomicReference<>(new RateSample(System.nanoTime(), 0, 0));
+    private volatile boolean closed;
+
+    /**
+     * Creates an engine with one worker per available processor.
+     */
+    public RenderEngine() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates an engine with the given number of worker threads.
+     *
+     * @param numThreads The number of worker threads
+     */
+    public RenderEngine(int numThreads) {
+        this.numThreads = numThreads;
+        executor = Executors.newFixedThreadPool(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            executor.submit(this::runWorker);
+        }
+        objectName = register("engine-" + ENGINE_COUNT.incrementAndGet());
+    }
+
+    /**
+     * Starts rendering a scene asynchronously. The thread count of the settings is ignored,
+     * the render runs on the engine's workers. Cancelling the returned future stops the render.
+     *
+     * @param scene The scene to render
+     * @param camera The camera to use for rendering
+     * @param settings The render settings
+     * @return A future completed with the rendered image, sized to the render region
+     */
+    public CompletableFuture<BufferedImage> render(Scene scene, Camera camera, RenderSettings settings) {
+        return submit(scene, camera, settings).getFuture();
+    }
+
+    /**
+     * Starts rendering a frame of a camera fly-through. Pixels showing a surface that was already visible
+     * in the previous frame of the history reuse its shading, see {@link TemporalHistory}.
+     *
+     * @param scene The scene to render, the same for all frames of the history
+     * @param camera The camera of this frame
+     * @param settings The render settings
+     * @param history The history of the fly-through, updated once the frame completes
+     * @return A future completed with the rendered image, sized to the render region
+     * @throws IllegalStateException If another frame of the history is still being rendered
+     */
+    public CompletableFuture<BufferedImage> render(Scene scene, Camera camera, RenderSettings settings,
+                                                   TemporalHistory history) {
+        return submit(scene, camera, settings, history, new CompletableFuture<>()).getFuture();
+    }
+
+    /**
+     * Starts rendering a scene from several views, e.g. the frames of a turntable. The thread counts of
+     * the settings are ignored, all views run on the engine's workers.
+     * <p>
+     * The views are started one after another: the next view starts as soon as every tile of the
+     * previous one has been taken. The workers stay busy until the last view is done while the views
+     * complete in order, so finished images can be saved while later views are still being traced.
+     * A time budget applies from the moment its view is started. Cancelling a future stops only its view.
+     *
+     * @param scene The scene to render, shared by all views
+     * @param views The cameras and settings of the views
+     * @return One future per view in the order of the views, each completed with the rendered image
+     */
+    public List<CompletableFuture<BufferedImage>> render(Scene scene, List<RenderView> views) {
+        if (closed) {
+            throw new IllegalStateException("Render engine has been closed");
+        }
+
+        List<CompletableFuture<BufferedImage>> futures = new ArrayList<>(views.size());
+        for (int i = 0; i < views.size(); i++) {
+            futures.add(new CompletableFuture<>());
+        }
+        startView(scene, views, futures, 0);
+        return futures;
+    }
+
+    /**
+     * Submits a view of a batch and starts the next one once all tiles of this view have been taken.
+     */
+    private void startView(Scene scene, List<RenderView> views, List<CompletableFuture<BufferedImage>> futures,
+                           int index) {
+        if (index == views.size()) {
+            return;
+        }
+        RenderView view = views.get(index);
+        RenderJob job;
+        try {
+            job = submit(scene, view.camera(), view.settings(), null, futures.get(index));
+        } catch (RuntimeException e) {
+            // The engine was closed or the view is invalid, the remaining views can't be rendered either
+            for (CompletableFuture<BufferedImage> future : futures.subList(index, futures.size())) {
+                future.completeExceptionally(e);
+            }
+            return;
+        }
+        job.getTilesTaken().thenRun(() -> startView(scene, views, futures, index + 1));
+    }
+
+    /**
+     * Submits a render job to the workers.
+     */
+    RenderJob submit(Scene scene, Camera camera, RenderSettings settings) {
+        return submit(scene, camera, settings, null, new CompletableFuture<>());
+    }
+
+    private RenderJob submit(Scene scene, Camera camera, RenderSettings settings, TemporalHistory history,
+                             CompletableFuture<BufferedImage> future) {
+        if (closed) {
+            throw new IllegalStateException("Render engine has been closed");
+        }
+
+        RenderJob job = new RenderJob(scene, camera, settings, history, future);
+        activeJobs.add(job);
+        job.getFuture().whenComplete((result, error) -> {
+            activeJobs.remove(job);
+            completedRenders.incrementAndGet();
+        });
+        schedule(job);
+        return job;
+    }
+
+    @Override
+    public int getActiveRenderCount() {
+        return activeJobs.size();
+    }
+
+    @Override
+    public int getQueuedTileCount() {
+        int tiles = 0;
+        for (RenderJob job : activeJobs) {
+            tiles += job.getQueuedTileCount();
+        }
+        return tiles;
+    }
+
+    @Override
+    public double getProgress() {
+        if (activeJobs.isEmpty()) {
+            return 1.0;
+        }
+        double progress = 0;
+        for (RenderJob job : activeJobs) {
+            progress += job.getProgress();
+        }
+        return progress / activeJobs.size();
+    }
+
+    @Override
+    public double getRaysPerSecond() {
+        // Every caller sees the rate of the last full interval, reading it doesn't shorten anyone's interval
+        RateSample sample = rateSample.get();
+        long now = System.nanoTime();
+        if (now - sample.time() < RATE_INTERVAL_NANOS) {
+            return sample.raysPerSecond();
+        }
+        long rays = totalRays.sum();
+        RateSample next = new RateSample(now, rays, (rays - sample.rays()) / ((now - sample.time()) / 1e9));
+        return rateSample.compareAndSet(sample, next) ? next.raysPerSecond() : rateSample.get().raysPerSecond();
+    }
+
+    @Override
+    public long getTotalRayCount() {
+        return totalRays.sum();
+    }
+
+    @Override
+    public long getCompletedRenderCount() {
+        return completedRenders.get();
+    }
+
+    @Override
+    public int getThreadCount() {
+        return numThreads;
+    }
+
+    /**
+     * Cancels all unfinished renders and stops the worker threads.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (RenderJob job : activeJobs) {
+            job.getFuture().cancel(true);
+        }
+        executor.shutdownNow();
+        unregister();
+    }
+
+    private ObjectName register(String name) {
+        try {
+            ObjectName registeredName = new ObjectName("ch.hslu.raytracer:type=RenderEngine,name=" + name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, registeredName);
+            return registeredName;
+        } catch (JMException e) {
+            // Monitoring is optional, the engine works without it
+            System.err.println("Could not register render engine MBean: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            System.err.println("Could not unregister render engine MBean: " + e.getMessage());
+        }
+    }
+
+    private void schedule(RenderJob job) {
+        if (job.markQueued()) {
+            queue.add(job);
+        }
+    }
+
+    private void runWorker() {
+        VisibilityBuffer.Row row = new VisibilityBuffer.Row(); // Reused by every tile this worker renders
+        try {
+            while (!closed) {
+                RenderJob job = queue.take();
+                RenderJob.Tile tile = job.nextTile();
+                if (tile == null) {
+                    continue;
+                }
+
+                // Put the job back at the tail so other jobs get the next tiles
+                schedule(job);
+                if (job.isDrained()) {
+                    job.getTilesTaken().complete(null);
+                }
+
+                long rays = 0;
+                try {
+                    rays = job.render(tile, row);
+                } catch (Throwable e) {
+                    // Fail only this render, the worker goes on with the tiles of other renders
+                    job.getFuture().completeExceptionally(e);
+                    if (isFatal(e)) {
+                        replaceWorker();
+                        throw e;
+                    }
+                } finally {
+                    totalRays.add(rays);
+                    if (job.tileCompleted(rays)) {
+                        schedule(job);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Checks if an error leaves the JVM in a state no worker should continue in. A stack overflow or
+     * running out of memory is caused by the render that failed, the next render may well succeed.
+     */
+    private static boolean isFatal(Throwable error) {
+        return error instanceof VirtualMachineError
+                && !(error instanceof StackOverflowError || error instanceof OutOfMemoryError);
+    }
+
+    // Keeps the pool at its size when a worker has to exit
+    private void replaceWorker() {
+        if (closed) {
+            return;
+        }
+        try {
+            executor.submit(this::runWorker);
+        } catch (RejectedExecutionException e) {
+            // The engine is being closed
+        }
+    }
+
+    /**
+     * The ray count at the end of a rate interval and the rate over that interval.
+     */
+    private record RateSample(long time, long rays, double raysPerSecond) {
+    }
+}
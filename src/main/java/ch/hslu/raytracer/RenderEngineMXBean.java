@@ -0,0 +1,44 @@
+package ch.hslu.raytracer;
+
+/**
+ * Management interface of a {@link RenderEngine}, registered with the platform MBean server
+ * under {@code ch.hslu.raytracer:type=RenderEngine,name=<engine name>}.
+ */
+public interface RenderEngineMXBean {
+
+    /**
+     * Gets the number of renders that have been submitted and are not finished yet.
+     */
+    int getActiveRenderCount();
+
+    /**
+     * Gets the number of tiles of all active renders waiting for a worker.
+     */
+    int getQueuedTileCount();
+
+    /**
+     * Gets the fraction of finished tiles over all active renders (0-1).
+     */
+    double getProgress();
+
+    /**
+     * Gets the number of rays traced per second, averaged over the last interval of at least a second
+     * that ended with a call. Concurrent clients all see the same rate.
+     */
+    double getRaysPerSecond();
+
+    /**
+     * Gets the number of rays traced by this engine since it was created.
+     */
+    long getTotalRayCount();
+
+    /**
+     * Gets the number of renders this engine has finished, including cancelled ones.
+     */
+    long getCompletedRenderCount();
+
+    /**
+     * Gets the number of worker threads.
+     */
+    int getThreadCount();
+}
@@ -0,0 +1,305 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.monitoring.RenderEvent;
+import ch.hslu.raytracer.monitoring.TileEvent;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.RayCounter;
+import ch.hslu.raytracer.scene.Scene;
+import lombok.Getter;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single render submitted to a {@link RenderEngine}. The image is split into scan line tiles
+ * which the engine's workers take one at a time, so several jobs can share the same workers.
+ * <p>
+ * With a time budget, the job first traces a coarse preview pass, which always completes, and then
+ * refines the image scan line by scan line until the deadline.
+ */
+class RenderJob {
+    private static final int PREVIEW_BLOCK_SIZE = 8;
+
+    private final Scene scene;
+    private final Camera camera;
+    private final RenderSettings settings;
+    private final Rectangle region;
+    @Getter
+    private final BufferedImage image;
+    @Getter
+    private final CompletableFuture<BufferedImage> future;
+    @Getter
+    private final CompletableFuture<Void> tilesTaken = new CompletableFuture<>(); // Completed once no tile is left to take
+    private final RenderBudget budget;
+    private final VisibilityBuffer visibility; // Null unless primary visibility is rasterized
+    private final TemporalHistory history;     // Null unless the previous frame is reused
+    private final RenderEvent event = new RenderEvent();
+
+    // Block sizes of the passes still to run, a block size of 1 is the full pass
+    private final Deque<Integer> passes = new ArrayDeque<>();
+    private final Deque<Integer> pendingLines = new ArrayDeque<>();
+    private int blockSize;
+    private int runningTiles;
+    private int completedTiles;
+    private int totalTiles;
+    private long rays;
+    private boolean queued;
+
+    RenderJob(Scene scene, Camera camera, RenderSettings settings) {
+        this(scene, camera, settings, null, new CompletableFuture<>());
+    }
+
+    /**
+     * Creates a job that completes the given future, e.g. one handed out before the job was submitted.
+     *
+     * @param history The history of a camera fly-through this frame belongs to, or null
+     */
+    RenderJob(Scene scene, Camera camera, RenderSettings settings, TemporalHistory history,
+              CompletableFuture<BufferedImage> future) {
+        event.begin();
+        this.future = future;
+        this.scene = scene;
+        this.camera = camera;
+        this.settings = settings;
+        this.region = settings.getRenderRegion();
+        this.image = new BufferedImage(region.width, region.height, BufferedImage.TYPE_INT_RGB);
+        this.budget = new RenderBudget(settings.getTimeBudgetMillis());
+        this.visibility = settings.isRasterizePrimaryVisibility()
+                ? new VisibilityBuffer(scene, camera, settings) : null;
+        this.history = history;
+        if (history != null) {
+            history.beginFrame(camera, settings, region);
+        }
+
+        // Fill the whole image cheaply first so unfinished lines fall back to the preview
+        if (budget.isLimited()) {
+            passes.add(PREVIEW_BLOCK_SIZE);
+        }
+        passes.add(1);
+        for (int passBlockSize : passes) {
+            totalTiles += (region.height + passBlockSize - 1) / passBlockSize;
+        }
+        startNextPass();
+
+        // Cancelling or failing the future stops the workers at their next pixel
+        future.whenComplete((result, error) -> {
+            if (error != null) {
+                stop();
+            }
+            commitEvent(error != null);
+            if (history != null) {
+                history.endFrame(error == null);
+            }
+            tilesTaken.complete(null);
+        });
+    }
+
+    /**
+     * Takes the next tile to render, or null if no tile is ready.
+     */
+    synchronized Tile nextTile() {
+        queued = false;
+        Integer y = pendingLines.poll();
+        if (y == null) {
+            return null;
+        }
+        runningTiles++;
+        return new Tile(y, blockSize);
+    }
+
+    /**
+     * Checks if every tile of the last pass has been taken, the job then needs no further workers.
+     */
+    synchronized boolean isDrained() {
+        return pendingLines.isEmpty() && passes.isEmpty();
+    }
+
+    /**
+     * Marks the job as queued if it has tiles ready and is not queued yet.
+     *
+     * @return True if the caller has to put the job into the engine's queue
+     */
+    synchronized boolean markQueued() {
+        if (queued || pendingLines.isEmpty()) {
+            return false;
+        }
+        queued = true;
+        return true;
+    }
+
+    /**
+     * Records that a tile has finished and advances to the next pass or completes
+     * the job once all tiles of the current pass are done.
+     *
+     * @param tileRays The number of rays traced for the tile
+     * @return True if a new pass has been started and the job needs to be queued again
+     */
+    synchronized boolean tileCompleted(long tileRays) {
+        runningTiles--;
+        completedTiles++;
+        rays += tileRays;
+        if (runningTiles > 0 || !pendingLines.isEmpty()) {
+            return false;
+        }
+        if (!future.isDone() && startNextPass()) {
+            return true;
+        }
+
+        if (budget.isLimited() && budget.isStopped() && !future.isDone()) {
+            System.err.println("Render budget of " + settings.getTimeBudgetMillis()
+                    + " ms exhausted, unfinished lines use the preview pass");
+        }
+        future.complete(image);
+        return false;
+    }
+
+    /**
+     * Gets the number of tiles of the current pass waiting for a worker.
+     */
+    synchronized int getQueuedTileCount() {
+        return pendingLines.size();
+    }
+
+    /**
+     * Gets the fraction of tiles rendered so far over all passes (0-1).
+     */
+    synchronized double getProgress() {
+        return (double) completedTiles / totalTiles;
+    }
+
+    private synchronized void commitEvent(boolean cancelled) {
+        if (event.shouldCommit()) {
+            event.width = settings.getRenderWidth();
+            event.height = settings.getRenderHeight();
+            event.region = region.x + "," + region.y + " " + region.width + "x" + region.height;
+            event.maxReflectionDepth = settings.getMaxReflectionDepth();
+            event.rays = rays;
+            event.tiles = completedTiles;
+            event.budgetExhausted = budget.isLimited() && budget.isStopped() && !cancelled;
+            event.cancelled = cancelled;
+            event.commit();
+        }
+    }
+
+    /**
+     * Stops the job, tiles not yet started are dropped and running tiles stop at their next pixel.
+     */
+    private synchronized void stop() {
+        budget.cancel();
+        passes.clear();
+        pendingLines.clear();
+    }
+
+    private boolean startNextPass() {
+        Integer nextBlockSize = passes.poll();
+        if (nextBlockSize == null) {
+            return false;
+        }
+        blockSize = nextBlockSize;
+
+        // Create a list of all scan lines and shuffle them randomly so unfinished lines spread evenly
+        List<Integer> scanLines = new ArrayList<>(region.height / blockSize + 1);
+        for (int y = region.y; y < region.y + region.height; y += blockSize) {
+            scanLines.add(y);
+        }
+        Collections.shuffle(scanLines);
+        pendingLines.addAll(scanLines);
+        budget.startPass(scanLines.size());
+        return true;
+    }
+
+    /**
+     * Renders a single tile into the image.
+     *
+     * @param row The calling worker's row for the visibility of the tile's scan line
+     * @return The number of rays traced for the tile
+     */
+    long render(Tile tile, VisibilityBuffer.Row row) {
+        TileEvent tileEvent = new TileEvent();
+        tileEvent.begin();
+        RayCounter rayCounter = new RayCounter();
+        renderPixels(tile, row, rayCounter);
+        long tileRays = rayCounter.getCount();
+
+        if (tileEvent.shouldCommit()) {
+            tileEvent.x = region.x;
+            tileEvent.y = tile.y();
+            tileEvent.width = region.width;
+            tileEvent.blockSize = tile.blockSize();
+            tileEvent.rays = tileRays;
+            tileEvent.commit();
+        }
+        return tileRays;
+    }
+
+    private void renderPixels(Tile tile, VisibilityBuffer.Row row, RayCounter rayCounter) {
+        // Project against the full frame so a cropped region matches the same pixels of a full render
+        int width = settings.getRenderWidth();
+        int height = settings.getRenderHeight();
+        int y = tile.y();
+
+        // The preview pass skips reflections, the full pass lowers the depth when behind schedule
+        budget.lineStarted();
+        int maxDepth = tile.blockSize() > 1 ? 0 : budget.reflectionDepth(settings.getMaxReflectionDepth());
+
+        // Only the full pass uses the visibility buffer, the preview is cheap enough to trace
+        boolean rasterized = visibility != null && tile.blockSize() == 1;
+        if (rasterized) {
+            visibility.rasterize(y, row);
+        }
+        boolean temporal = history != null && tile.blockSize() == 1;
+
+        // The preview pass is finished even past the deadline, so every line has at least its preview
+        boolean preview = tile.blockSize() > 1;
+        for (int x = region.x; x < region.x + region.width; x += tile.blockSize()) {
+            if (preview ? budget.isCancelled() : budget.isStopped()) {
+                return;
+            }
+
+            // Create a ray from the camera
+            Ray ray = camera.createPixelRay(x, y, width, height, tile.blockSize());
+
+            // Trace the ray through the scene, or shade the buffered primary hit
+            Color pixelColor;
+            if (temporal) {
+                HitInfo hit = rasterized ? visibility.getHit(x, row) : scene.intersect(ray);
+                pixelColor = history.shade(scene, ray, hit, x, y, maxDepth, rayCounter);
+            } else {
+                pixelColor = rasterized
+                        ? scene.shade(ray, visibility.getHit(x, row), maxDepth, rayCounter)
+                        : scene.trace(ray, maxDepth, rayCounter);
+            }
+
+            // Synchronize access to the shared image
+            synchronized (image) {
+                fillBlock(x, y, tile.blockSize(), pixelColor.getRGB());
+            }
+        }
+        budget.lineCompleted();
+    }
+
+    private void fillBlock(int x, int y, int size, int rgb) {
+        int maxX = Math.min(x + size, region.x + region.width);
+        int maxY = Math.min(y + size, region.y + region.height);
+        for (int by = y; by < maxY; by++) {
+            for (int bx = x; bx < maxX; bx++) {
+                image.setRGB(bx - region.x, by - region.y, rgb);
+            }
+        }
+    }
+
+    /**
+     * A scan line of a pass, traced with one ray per block of the given size.
+     */
+    record Tile(int y, int blockSize) {
+    }
+}
@@ -4,6 +4,7 @@ import lombok.Builder;
 import lombok.Builder.Default;
 import lombok.Getter;
 
+import java.awt.Rectangle;
 import java.io.File;
 
 @Getter
@@ -22,12 +23,70 @@ public class RenderSettings {
     String outputFilename = "raytraced_image";
     @Default
     String outputFormat = "png";
+    @Default
+    double resolutionScale = 1.0; // Factor applied to width and height, e.g. 0.25 for a quarter-resolution draft
+    @Default
+    Rectangle cropWindow = null; // Pixel rectangle of the full-resolution frame to trace, null for the whole frame
+    @Default
+    long timeBudgetMillis = 0; // Wall-clock budget for a render, 0 renders without a time limit
+    @Default
+    boolean rasterizePrimaryVisibility = false; // Rasterize primary hits into a visibility buffer instead of tracing
 
     public File getOutputFile() {
         return new File(outputFilename + "." + outputFormat);
     }
 
+    /**
+     * Gets the width of the full frame after applying the resolution scale.
+     */
+    public int getRenderWidth() {
+        return Math.max(1, (int) Math.round(width * resolutionScale));
+    }
+
+    /**
+     * Gets the height of the full frame after applying the resolution scale.
+     */
+    public int getRenderHeight() {
+        return Math.max(1, (int) Math.round(height * resolutionScale));
+    }
+
+    /**
+     * Gets the pixel rectangle to trace in scaled frame coordinates.
+     * The crop window is scaled along with the frame and clipped to its bounds.
+     *
+     * @return The region to render, never empty
+     */
+    public Rectangle getRenderRegion() {
+        Rectangle frame = new Rectangle(0, 0, getRenderWidth(), getRenderHeight());
+        if (cropWindow == null) {
+            return frame;
+        }
+
+        int x0 = (int) Math.floor(cropWindow.x * resolutionScale);
+        int y0 = (int) Math.floor(cropWindow.y * resolutionScale);
+        int x1 = (int) Math.ceil((cropWindow.x + cropWindow.width) * resolutionScale);
+        int y1 = (int) Math.ceil((cropWindow.y + cropWindow.height) * resolutionScale);
+        Rectangle region = frame.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+
+        if (region.isEmpty()) {
+            throw new IllegalArgumentException("Crop window " + cropWindow + " lies outside the "
+                    + width + "x" + height + " frame");
+        }
+        return region;
+    }
+
     public static RenderSettings createDefault() {
         return builder().build();
     }
+
+    /**
+     * Creates settings for a low-resolution draft of the given settings.
+     *
+     * @param settings The settings of the final render
+     * @param scale The resolution scale factor (0-1)
+     * @return A copy of the settings with the resolution scale applied
+     */
+    public static RenderSettings createDraft(RenderSettings settings, double scale) {
+        return settings.toBuilder().resolutionScale(scale).build();
+    }
 }
@@ -0,0 +1,12 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.scene.Camera;
+
+/**
+ * One view of a batch render, a camera with the settings to render it with.
+ *
+ * @param camera The camera to render the view from
+ * @param settings The render settings, including the output file of the view
+ */
+public record RenderView(Camera camera, RenderSettings settings) {
+}
@@ -0,0 +1,196 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.RayCounter;
+import ch.hslu.raytracer.scene.Scene;
+import ch.hslu.raytracer.scene.ShadingRecord;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the shading of the last frame of a camera fly-through so the next frame can reuse it.
+ * <p>
+ * Before a frame is traced, the hit points recorded for the previous frame are projected into the
+ * new camera and the closest one per pixel becomes the pixel's candidate. The pixel's closest hit is still
+ * searched in the whole scene, only its shading is reused: if the hit lies on the candidate's object and
+ * material within a pixel's footprint of the recorded point, the lights the candidate saw are taken as the
+ * lights reaching the pixel and no shadow rays are traced.
+ * <p>
+ * Pixels without a candidate were disoccluded and are shaded in full, like pixels whose check fails and
+ * reflective materials. So are pixels next to a candidate of another object, which may lie on a silhouette
+ * the splatted points don't cover exactly, and pixels next to a candidate that saw other lights, which lie
+ * near a shadow edge. Every hit is recorded for the next frame.
+ * <p>
+ * Only the camera may change between the frames of a history, the scene and its lights must stay the same.
+ * The frames of a history have to be rendered one after another.
+ */
+public class TemporalHistory {
+    private static final double MIN_NORMAL_COSINE = 0.99;   // Larger normal changes mean another face or a silhouette
+    private static final double MIN_INCIDENCE_COSINE = 0.5; // Limits the tolerance at grazing angles
+
+    private ShadingRecord[] previous; // Records of the last frame, null where a pixel saw no object
+    private ShadingRecord[] current;
+    private int[] candidates;         // Index into the previous records for every pixel, -1 if there is none
+    private Rectangle region;
+    private boolean rendering;
+    private final LongAdder reusedPixels = new LongAdder();
+    private final LongAdder tracedPixels = new LongAdder();
+    private volatile long lastReusedPixels;
+    private volatile long lastTracedPixels;
+
+    /**
+     * Gets the number of pixels of the last frame that reused the shading of the frame before.
+     */
+    public long getReusedPixelCount() {
+        return lastReusedPixels;
+    }
+
+    /**
+     * Gets the number of pixels of the last frame that were traced in full.
+     */
+    public long getTracedPixelCount() {
+        return lastTracedPixels;
+    }
+
+    /**
+     * Forgets the recorded frame, e.g. after a cut in the camera path. The next frame is traced in full.
+     */
+    public synchronized void clear() {
+        if (rendering) {
+            throw new IllegalStateException("A frame of this history is being rendered");
+        }
+        previous = null;
+    }
+
+    /**
+     * Prepares the history for a new frame by projecting the recorded hit points into the new camera.
+     */
+    synchronized void beginFrame(Camera camera, RenderSettings settings, Rectangle region) {
+        if (rendering) {
+            throw new IllegalStateException("A frame of this history is already being rendered");
+        }
+        rendering = true;
+        this.region = region;
+        current = new ShadingRecord[region.width * region.height];
+        candidates = new int[current.length];
+        Arrays.fill(candidates, -1);
+        reusedPixels.reset();
+        tracedPixels.reset();
+        if (previous == null) {
+            return;
+        }
+
+        // Splat the recorded points onto the nearest pixel, keeping the one closest to the camera
+        int width = settings.getRenderWidth();
+        int height = settings.getRenderHeight();
+        double[] depths = new double[current.length];
+        for (int i = 0; i < previous.length; i++) {
+            ShadingRecord record = previous[i];
+            if (record == null) {
+                continue;
+            }
+            double[] pixel = camera.project(record.getHitPoint(), width, height);
+            if (pixel == null) {
+                continue;
+            }
+            int x = (int) Math.round(pixel[0]) - region.x;
+            int y = (int) Math.round(pixel[1]) - region.y;
+            if (x < 0 || y < 0 || x >= region.width || y >= region.height) {
+                continue;
+            }
+            int index = y * region.width + x;
+            Vector offset = record.getHitPoint().subtract(camera.getPosition());
+            double depth = offset.dot(offset);
+            if (candidates[index] < 0 || depth < depths[index]) {
+                candidates[index] = i;
+                depths[index] = depth;
+            }
+        }
+    }
+
+    /**
+     * Shades a pixel of the current frame and records its shading for the next frame. The shading of the
+     * pixel's candidate is reused if the candidate's surface is what the pixel sees, otherwise the pixel is
+     * shaded in full.
+     *
+     * @param hitInfo The closest hit of the pixel's primary ray, or null if it hits nothing
+     * @param rays Counts the rays traced for the pixel
+     */
+    Color shade(Scene scene, Ray ray, HitInfo hitInfo, int x, int y, int maxReflectionDepth, RayCounter rays) {
+        int index = (y - region.y) * region.width + (x - region.x);
+        int candidate = candidates[index];
+        if (hitInfo != null && candidate >= 0) {
+            ShadingRecord record = previous[candidate];
+            if (record.isReusable() && isSameSurface(record, ray, hitInfo)
+                    && !isNearEdge(record, x - region.x, y - region.y)) {
+                current[index] = record;
+                reusedPixels.increment();
+                return scene.reshade(ray, hitInfo, maxReflectionDepth, record, rays);
+            }
+        }
+
+        ShadingRecord record = new ShadingRecord();
+        Color color = scene.shade(ray, hitInfo, maxReflectionDepth, record, rays);
+        if (hitInfo != null) {
+            // Records that can't be reused still hide the points behind them when the next frame is splatted
+            current[index] = record;
+        }
+        tracedPixels.increment();
+        return color;
+    }
+
+    /**
+     * Checks if the recorded point lies on the surface the ray hits, close enough to share its lighting.
+     */
+    private static boolean isSameSurface(ShadingRecord record, Ray ray, HitInfo hitInfo) {
+        if (record.getObject() != hitInfo.getObject() || record.getMaterial() != hitInfo.getMaterial()
+                || record.getNormal().dot(hitInfo.getNormal()) < MIN_NORMAL_COSINE) {
+            return false;
+        }
+
+        // The recorded point projects into this pixel, on a slanted surface it may still lie a few footprints away
+        double cosine = Math.max(MIN_INCIDENCE_COSINE, Math.abs(hitInfo.getNormal().dot(ray.direction())));
+        double tolerance = ray.footprintAt(hitInfo.getDistance()) / cosine;
+        Vector offset = record.getHitPoint().subtract(hitInfo.getHitPoint());
+        return offset.dot(offset) <= tolerance * tolerance;
+    }
+
+    /**
+     * Checks if a neighbouring candidate belongs to another object or saw other lights, the silhouette or
+     * the shadow edge may then have moved into the pixel.
+     */
+    private boolean isNearEdge(ShadingRecord record, int x, int y) {
+        for (int ny = Math.max(0, y - 1); ny <= Math.min(region.height - 1, y + 1); ny++) {
+            for (int nx = Math.max(0, x - 1); nx <= Math.min(region.width - 1, x + 1); nx++) {
+                int neighbour = candidates[ny * region.width + nx];
+                if (neighbour >= 0 && (previous[neighbour].getObject() != record.getObject()
+                        || previous[neighbour].getVisibleLights() != record.getVisibleLights())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finishes the current frame, its records become the ones the next frame reuses.
+     *
+     * @param completed False if the frame was cancelled or failed, the previous records are kept then
+     */
+    synchronized void endFrame(boolean completed) {
+        if (completed) {
+            previous = current;
+            lastReusedPixels = reusedPixels.sum();
+            lastTracedPixels = tracedPixels.sum();
+        }
+        current = null;
+        candidates = null;
+        rendering = false;
+    }
+}
@@ -0,0 +1,489 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.core.Bounds;
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.objects.Object3D;
+import ch.hslu.raytracer.objects.RotatedCube;
+import ch.hslu.raytracer.objects.Sphere;
+import ch.hslu.raytracer.objects.Triangle;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Primary visibility of a render region, rasterized scan line by scan line into the id, depth and normal
+ * of the closest object of every pixel.
+ * <p>
+ * Spheres, triangles and cubes are rasterized analytically: the span a sphere covers on a scan line follows
+ * from a quadratic, the span of a triangle from its projected edges. Within its span, the depth of a primitive
+ * is computed with the same arithmetic as its intersection test, so the buffer holds exactly what a traced
+ * primary ray would hit. Other objects are intersected ray by ray within their projected bounds. A scan line
+ * is filled into a {@link Row} owned by the worker, so the memory needed doesn't grow with the frame.
+ */
+class VisibilityBuffer {
+    private static final double MIN_HIT_DISTANCE = 0.001;       // Same as the closest hit search of the scene
+    private static final double MIN_PRIMITIVE_DISTANCE = 0.0001; // Same as Sphere and Triangle
+    private static final double MIN_DETERMINANT = 0.0001;        // Rays more parallel to a triangle miss it
+
+    private final List<Object3D> objects;
+    private final Camera camera;
+    private final Vector origin;
+    private final Rectangle region;
+    private final int frameWidth;
+    private final int frameHeight;
+
+    // Screen rectangles of the objects in frame coordinates, null if the object isn't visible
+    private final Rectangle[] footprints;
+    private final Shape[] shapes; // Null for objects that are intersected ray by ray
+
+    VisibilityBuffer(Scene scene, Camera camera, RenderSettings settings) {
+        this.objects = scene.getObjects();
+        this.camera = camera;
+        this.origin = camera.getPosition();
+        this.region = settings.getRenderRegion();
+        this.frameWidth = settings.getRenderWidth();
+        this.frameHeight = settings.getRenderHeight();
+
+        this.footprints = new Rectangle[objects.size()];
+        this.shapes = new Shape[objects.size()];
+        for (int i = 0; i < footprints.length; i++) {
+            footprints[i] = project(objects.get(i).getBounds());
+            if (footprints[i] != null) {
+                shapes[i] = createShape(objects.get(i));
+            }
+        }
+    }
+
+    /**
+     * Fills a row with the closest objects of the primary rays of a scan line.
+     *
+     * @param y The scan line in frame coordinates
+     * @param row The row to fill, its previous content is overwritten
+     */
+    void rasterize(int y, Row row) {
+        row.reset(y, region.width);
+        for (int i = 0; i < region.width; i++) {
+            Vector direction = camera.getPixelDirection(region.x + i, y, frameWidth, frameHeight);
+            row.directionX[i] = direction.x();
+            row.directionY[i] = direction.y();
+            row.directionZ[i] = direction.z();
+        }
+
+        // A strict depth test in scene order resolves ties like a traced ray
+        for (int id = 0; id < footprints.length; id++) {
+            Rectangle footprint = footprints[id];
+            if (footprint == null || y < footprint.y || y >= footprint.y + footprint.height) {
+                continue;
+            }
+            int from = footprint.x - region.x;
+            int to = from + footprint.width;
+            Arrays.fill(row.objectDepths, from, to, Double.MAX_VALUE);
+
+            Shape shape = shapes[id];
+            if (shape != null) {
+                shape.rasterize(y, from, to, row);
+            } else {
+                intersect(objects.get(id), y, from, to, row);
+            }
+
+            for (int i = from; i < to; i++) {
+                double depth = row.objectDepths[i];
+                if (depth > MIN_HIT_DISTANCE && depth < row.depths[i]) {
+                    row.ids[i] = id;
+                    row.depths[i] = depth;
+                    if (shape != null) {
+                        shape.storeNormal(i, row);
+                        row.hits[i] = null;
+                    } else {
+                        HitInfo hit = row.objectHits[i];
+                        row.normalX[i] = hit.getNormal().x();
+                        row.normalY[i] = hit.getNormal().y();
+                        row.normalZ[i] = hit.getNormal().z();
+                        row.hits[i] = hit;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the closest hit of the primary ray of a pixel from a rasterized row.
+     *
+     * @param x The pixel column in frame coordinates
+     * @param row The row the pixel's scan line was rasterized into
+     * @return The hit, or null if the pixel sees no object
+     */
+    HitInfo getHit(int x, Row row) {
+        int i = x - region.x;
+        if (row.ids[i] < 0) {
+            return null;
+        }
+        if (row.hits[i] != null) {
+            return row.hits[i];
+        }
+
+        Object3D object = objects.get(row.ids[i]);
+        if (object.getMaterial().getTexture() != null) {
+            // Texture coordinates aren't buffered, only the hit that is shaded computes them
+            return object.intersect(camera.createPixelRay(x, row.y, frameWidth, frameHeight, 1));
+        }
+        Vector direction = new Vector(row.directionX[i], row.directionY[i], row.directionZ[i]);
+        Vector hitPoint = origin.add(direction.scale(row.depths[i]));
+        return new HitInfo(object, hitPoint, new Vector(row.normalX[i], row.normalY[i], row.normalZ[i]),
+                row.depths[i]);
+    }
+
+    /**
+     * Intersects the primary rays of a span with an object that isn't rasterized.
+     */
+    private void intersect(Object3D object, int y, int from, int to, Row row) {
+        for (int i = from; i < to; i++) {
+            HitInfo hit = object.intersect(camera.createPixelRay(region.x + i, y, frameWidth, frameHeight, 1));
+            row.objectHits[i] = hit;
+            if (hit != null) {
+                row.objectDepths[i] = hit.getDistance();
+            }
+        }
+    }
+
+    private Shape createShape(Object3D object) {
+        if (object instanceof Sphere sphere) {
+            return new SphereShape(sphere.getCenter(), sphere.getRadius());
+        } else if (object instanceof Triangle triangle) {
+            return new TriangleShape(List.of(triangle));
+        } else if (object instanceof RotatedCube cube) {
+            return new TriangleShape(cube.getTriangles());
+        }
+        return null;
+    }
+
+    /**
+     * Projects the bounds of an object onto the render region.
+     *
+     * @return The covered pixels, or null if the object lies outside the region
+     */
+    private Rectangle project(Bounds bounds) {
+        if (bounds == null) {
+            return new Rectangle(region);
+        }
+
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        for (Vector corner : bounds.corners()) {
+            double[] pixel = camera.project(corner, frameWidth, frameHeight);
+            if (pixel == null) {
+                // Part of the object lies behind the camera, its projection is unbounded
+                return new Rectangle(region);
+            }
+            minX = Math.min(minX, pixel[0]);
+            minY = Math.min(minY, pixel[1]);
+            maxX = Math.max(maxX, pixel[0]);
+            maxY = Math.max(maxY, pixel[1]);
+        }
+
+        // Grow by a pixel so rounding never drops an edge pixel
+        int x0 = (int) Math.floor(minX) - 1;
+        int y0 = (int) Math.floor(minY) - 1;
+        int x1 = (int) Math.ceil(maxX) + 1;
+        int y1 = (int) Math.ceil(maxY) + 1;
+        Rectangle footprint = region.intersection(new Rectangle(x0, y0, x1 - x0, y1 - y0));
+        return footprint.isEmpty() ? null : footprint;
+    }
+
+    /**
+     * Stores the indices of the row a span of frame columns covers, grown by a pixel on both sides so
+     * rounding never drops an edge pixel, and clipped to a footprint.
+     *
+     * @return False if the span misses the footprint
+     */
+    private boolean clip(double minX, double maxX, int from, int to, Row row) {
+        if (Double.isNaN(minX) || Double.isNaN(maxX)) {
+            return span(from, to, row);
+        }
+        double start = Math.max(from, Math.floor(minX) - 1 - region.x);
+        double end = Math.min(to, Math.ceil(maxX) + 2 - region.x);
+        return start < end && span((int) start, (int) end, row);
+    }
+
+    private static boolean span(int from, int to, Row row) {
+        row.spanFrom = from;
+        row.spanTo = to;
+        return true;
+    }
+
+    /**
+     * An object rasterized analytically.
+     */
+    private interface Shape {
+        /**
+         * Writes the depth of the object into the row wherever a primary ray hits it, leaving the other
+         * pixels of the footprint untouched.
+         */
+        void rasterize(int y, int from, int to, Row row);
+
+        /**
+         * Stores the normal of the object at the depth written to the row.
+         */
+        void storeNormal(int i, Row row);
+    }
+
+    /**
+     * A sphere, whose span on a scan line is the range of directions closer to its center than its radius.
+     */
+    private final class SphereShape implements Shape {
+        private final Vector center;
+        private final double radius;
+        private final double ocX, ocY, ocZ; // From the center to the camera
+        private final double c;             // Same as Sphere
+
+        private SphereShape(Vector center, double radius) {
+            this.center = center;
+            this.radius = radius;
+            Vector oc = origin.subtract(center);
+            this.ocX = oc.x();
+            this.ocY = oc.y();
+            this.ocZ = oc.z();
+            this.c = oc.dot(oc) - radius * radius;
+        }
+
+        @Override
+        public void rasterize(int y, int from, int to, Row row) {
+            // Primary rays only run forward, they can't reach a sphere behind the camera
+            if (radius - ocZ <= 0) {
+                return;
+            }
+
+            boolean covered = c > 0 ? span(y, from, to, row) : VisibilityBuffer.span(from, to, row);
+            if (!covered) {
+                return;
+            }
+            for (int i = row.spanFrom; i < row.spanTo; i++) {
+                double dx = row.directionX[i], dy = row.directionY[i], dz = row.directionZ[i];
+                double a = dx * dx + dy * dy + dz * dz;
+                double b = 2.0 * (ocX * dx + ocY * dy + ocZ * dz);
+                double discriminant = b * b - 4 * a * c;
+                if (discriminant < 0) {
+                    continue;
+                }
+                double t1 = (-b - Math.sqrt(discriminant)) / (2.0 * a);
+                double t2 = (-b + Math.sqrt(discriminant)) / (2.0 * a);
+                if (t1 > MIN_PRIMITIVE_DISTANCE) {
+                    row.objectDepths[i] = t1;
+                } else if (t2 > MIN_PRIMITIVE_DISTANCE) {
+                    row.objectDepths[i] = t2;
+                }
+            }
+        }
+
+        /**
+         * Solves for the screen x of the directions (x, ny, 1) whose line touches the sphere, which is a
+         * quadratic in x. Only the camera outside the sphere is handled, inside every direction hits it.
+         */
+        private boolean span(int y, int from, int to, Row row) {
+            double aspectRatio = (double) frameWidth / frameHeight;
+            double ny = -(y - frameHeight / 2.0) / (frameHeight / 2.0);
+            double m = -ocY * ny - ocZ;
+            double qa = c - ocX * ocX;
+            double qb = 2 * ocX * m;
+            double qc = c * (ny * ny + 1) - m * m;
+            if (qa <= 0) {
+                // The sphere reaches beside the camera, its span may be unbounded
+                return VisibilityBuffer.span(from, to, row);
+            }
+            double discriminant = qb * qb - 4 * qa * qc;
+            if (discriminant < 0) {
+                return false;
+            }
+            double root = Math.sqrt(discriminant);
+            double minX = (-qb - root) / (2 * qa) / aspectRatio * (frameWidth / 2.0) + frameWidth / 2.0;
+            double maxX = (-qb + root) / (2 * qa) / aspectRatio * (frameWidth / 2.0) + frameWidth / 2.0;
+            return clip(minX, maxX, from, to, row);
+        }
+
+        @Override
+        public void storeNormal(int i, Row row) {
+            Vector direction = new Vector(row.directionX[i], row.directionY[i], row.directionZ[i]);
+            Vector normal = origin.add(direction.scale(row.depths[i])).subtract(center).normalize();
+            row.normalX[i] = normal.x();
+            row.normalY[i] = normal.y();
+            row.normalZ[i] = normal.z();
+        }
+    }
+
+    /**
+     * The triangles of a triangle or a cube, each spanning the columns between its projected edges.
+     */
+    private final class TriangleShape implements Shape {
+        private final double[] edges;    // Both edges from the first vertex per triangle
+        private final double[] offsets;  // From the first vertex to the camera, and that crossed with the first edge
+        private final double[] normals;
+        private final double[] vertices; // Projected vertices per triangle, NaN if one lies behind the camera
+
+        private TriangleShape(List<Triangle> triangles) {
+            int count = triangles.size();
+            edges = new double[count * 6];
+            offsets = new double[count * 6];
+            normals = new double[count * 3];
+            vertices = new double[count * 6];
+            for (int t = 0; t < count; t++) {
+                Triangle triangle = triangles.get(t);
+                Vector edge1 = triangle.getV1().subtract(triangle.getV0());
+                Vector edge2 = triangle.getV2().subtract(triangle.getV0());
+                Vector s = origin.subtract(triangle.getV0());
+                Vector q = s.cross(edge1);
+                Vector normal = edge1.cross(edge2).normalize();
+                put(edges, t * 6, edge1);
+                put(edges, t * 6 + 3, edge2);
+                put(offsets, t * 6, s);
+                put(offsets, t * 6 + 3, q);
+                put(normals, t * 3, normal);
+
+                Vector[] corners = {triangle.getV0(), triangle.getV1(), triangle.getV2()};
+                for (int v = 0; v < 3; v++) {
+                    double[] pixel = camera.project(corners[v], frameWidth, frameHeight);
+                    vertices[t * 6 + v * 2] = pixel != null ? pixel[0] : Double.NaN;
+                    vertices[t * 6 + v * 2 + 1] = pixel != null ? pixel[1] : Double.NaN;
+                }
+            }
+        }
+
+        @Override
+        public void rasterize(int y, int from, int to, Row row) {
+            // The closest of the triangles in order, like RotatedCube, before the depth test of the scene
+            for (int t = 0; t < normals.length / 3; t++) {
+                if (!span(t, y, from, to, row)) {
+                    continue;
+                }
+                int e = t * 6;
+                double e1x = edges[e], e1y = edges[e + 1], e1z = edges[e + 2];
+                double e2x = edges[e + 3], e2y = edges[e + 4], e2z = edges[e + 5];
+                double sx = offsets[e], sy = offsets[e + 1], sz = offsets[e + 2];
+                double qx = offsets[e + 3], qy = offsets[e + 4], qz = offsets[e + 5];
+                for (int i = row.spanFrom; i < row.spanTo; i++) {
+                    double dx = row.directionX[i], dy = row.directionY[i], dz = row.directionZ[i];
+
+                    // Möller–Trumbore with the terms that only depend on the camera computed once
+                    double hx = dy * e2z - dz * e2y;
+                    double hy = dz * e2x - dx * e2z;
+                    double hz = dx * e2y - dy * e2x;
+                    double a = e1x * hx + e1y * hy + e1z * hz;
+                    if (Math.abs(a) < MIN_DETERMINANT) {
+                        continue;
+                    }
+                    double f = 1.0 / a;
+                    double u = f * (sx * hx + sy * hy + sz * hz);
+                    if (u < 0.0 || u > 1.0) {
+                        continue;
+                    }
+                    double v = f * (dx * qx + dy * qy + dz * qz);
+                    if (v < 0.0 || u + v > 1.0) {
+                        continue;
+                    }
+                    double distance = f * (e2x * qx + e2y * qy + e2z * qz);
+                    if (distance > MIN_PRIMITIVE_DISTANCE && distance < row.objectDepths[i]) {
+                        row.objectDepths[i] = distance;
+                        row.objectPrimitives[i] = t;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Finds the columns the projected triangle covers within a pixel above and below the scan line.
+         */
+        private boolean span(int t, int y, int from, int to, Row row) {
+            int p = t * 6;
+            if (Double.isNaN(vertices[p]) || Double.isNaN(vertices[p + 2]) || Double.isNaN(vertices[p + 4])) {
+                return VisibilityBuffer.span(from, to, row);
+            }
+            double minX = Double.MAX_VALUE, maxX = -Double.MAX_VALUE;
+            for (int v = 0; v < 3; v++) {
+                double x0 = vertices[p + v * 2], y0 = vertices[p + v * 2 + 1];
+                double x1 = vertices[p + (v + 1) % 3 * 2], y1 = vertices[p + (v + 1) % 3 * 2 + 1];
+                if (y0 >= y - 1 && y0 <= y + 1) {
+                    minX = Math.min(minX, x0);
+                    maxX = Math.max(maxX, x0);
+                }
+                for (int line = y - 1; line <= y + 1; line += 2) {
+                    if ((y0 - line) * (y1 - line) < 0) {
+                        double x = x0 + (line - y0) * (x1 - x0) / (y1 - y0);
+                        minX = Math.min(minX, x);
+                        maxX = Math.max(maxX, x);
+                    }
+                }
+            }
+            return minX <= maxX && clip(minX, maxX, from, to, row);
+        }
+
+        @Override
+        public void storeNormal(int i, Row row) {
+            int n = row.objectPrimitives[i] * 3;
+            double nx = normals[n], ny = normals[n + 1], nz = normals[n + 2];
+
+            // Facing the ray, like Triangle
+            if (nx * row.directionX[i] + ny * row.directionY[i] + nz * row.directionZ[i] > 0) {
+                nx = -nx;
+                ny = -ny;
+                nz = -nz;
+            }
+            row.normalX[i] = nx;
+            row.normalY[i] = ny;
+            row.normalZ[i] = nz;
+        }
+
+        private static void put(double[] values, int index, Vector vector) {
+            values[index] = vector.x();
+            values[index + 1] = vector.y();
+            values[index + 2] = vector.z();
+        }
+    }
+
+    /**
+     * The closest object, its depth and its normal for every pixel of one scan line. A worker keeps
+     * a single row and reuses it for every render.
+     */
+    static final class Row {
+        private int y;
+        private int[] ids = new int[0];           // Index of the closest object in the scene, -1 for none
+        private double[] depths = new double[0];
+        private double[] normalX = new double[0];
+        private double[] normalY = new double[0];
+        private double[] normalZ = new double[0];
+        private HitInfo[] hits = new HitInfo[0];  // Hits of objects intersected ray by ray, null otherwise
+        private double[] directionX = new double[0];
+        private double[] directionY = new double[0];
+        private double[] directionZ = new double[0];
+
+        // The object currently rasterized, before its depth test
+        private double[] objectDepths = new double[0];
+        private int[] objectPrimitives = new int[0];
+        private HitInfo[] objectHits = new HitInfo[0];
+        private int spanFrom;                     // The columns of the current primitive's span
+        private int spanTo;
+
+        private void reset(int y, int width) {
+            this.y = y;
+            if (ids.length < width) {
+                ids = new int[width];
+                depths = new double[width];
+                normalX = new double[width];
+                normalY = new double[width];
+                normalZ = new double[width];
+                hits = new HitInfo[width];
+                directionX = new double[width];
+                directionY = new double[width];
+                directionZ = new double[width];
+                objectDepths = new double[width];
+                objectPrimitives = new int[width];
+                objectHits = new HitInfo[width];
+            }
+            Arrays.fill(ids, 0, width, -1);
+            Arrays.fill(depths, 0, width, Double.MAX_VALUE);
+            Arrays.fill(hits, 0, width, null);
+        }
+    }
+}
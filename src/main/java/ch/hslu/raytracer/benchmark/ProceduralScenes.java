@@ -0,0 +1,322 @@
+package ch.hslu.raytracer.benchmark;
+
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.objects.PackedGeometry;
+import ch.hslu.raytracer.objects.SphereCloud;
+import ch.hslu.raytracer.objects.Triangle;
+import ch.hslu.raytracer.scene.Scene;
+import ch.hslu.raytracer.scene.SceneBuilder;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generators for scenes of arbitrary size, used to measure how render time scales.
+ * All objects are placed inside the view volume of the default camera and every
+ * generator is seeded, so the same arguments always produce the same scene.
+ */
+public final class ProceduralScenes {
+
+    // Part of the snapshot hash, increment whenever a generator changes the scenes it produces
+    public static final int VERSION = 1;
+
+    // View volume of the default camera the objects are spread over
+    private static final double MIN_X = -4, MAX_X = 4;
+    private static final double MIN_Y = -1, MAX_Y = 2.5;
+    private static final double MIN_Z = 2, MAX_Z = 12;
+
+    private static final MaterialType[] MATERIALS = MaterialType.values();
+
+    private ProceduralScenes() {
+    }
+
+    /**
+     * Creates a field of randomly placed spheres above a ground sphere.
+     *
+     * @param count The number of spheres, not counting the ground
+     * @param seed The random seed
+     * @return A builder holding the spheres, lights can still be added
+     */
+    public static SceneBuilder sphereField(int count, long seed) {
+        Random random = new Random(seed);
+        SceneBuilder builder = withGround();
+
+        // Shrink the spheres with the count so the field keeps roughly the same coverage
+        double radius = 0.5 * cellSize(count);
+        for (int i = 0; i < count; i++) {
+            builder.addSphere(randomPoint(random), radius * (0.5 + random.nextDouble()),
+                    randomMaterial(random), random.nextDouble() * 0.5);
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a regular grid of randomly rotated cubes above a ground sphere.
+     *
+     * @param count The number of cubes, each adds 12 triangles
+     * @param seed The random seed
+     * @return A builder holding the cubes, lights can still be added
+     */
+    public static SceneBuilder cubeGrid(int count, long seed) {
+        Random random = new Random(seed);
+        SceneBuilder builder = withGround();
+
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (int) Math.ceil((double) count / columns);
+        double spacingX = (MAX_X - MIN_X) / columns;
+        double spacingZ = (MAX_Z - MIN_Z) / rows;
+        double size = 0.6 * Math.min(spacingX, spacingZ);
+
+        for (int i = 0; i < count; i++) {
+            int column = i % columns;
+            int row = i / columns;
+            Vector center = new Vector(
+                    MIN_X + (column + 0.5) * spacingX,
+                    -1 + size,
+                    MIN_Z + (row + 0.5) * spacingZ
+            );
+            builder.addRotatedCube(center, size, randomMaterial(random), random.nextDouble() * 0.5,
+                    random.nextDouble() * 90, random.nextDouble() * 90, random.nextDouble() * 90);
+        }
+        return builder;
+    }
+
+    /**
+     * Creates a soup of small, randomly oriented triangles above a ground sphere.
+     *
+     * @param count The number of triangles
+     * @param seed The random seed
+     * @return A builder holding the triangles, lights can still be added
+     */
+    public static SceneBuilder randomMesh(int count, long seed) {
+        Random random = new Random(seed);
+        SceneBuilder builder = withGround();
+
+        double edge = cellSize(count);
+        for (int i = 0; i < count; i++) {
+            Vector v0 = randomPoint(random);
+            Vector v1 = v0.add(randomDirection(random).scale(edge));
+            Vector v2 = v0.add(randomDirection(random).scale(edge));
+            builder.addTriangle(v0, v1, v2, randomMaterial(random), random.nextDouble() * 0.5);
+        }
+        return builder;
+    }
+
+    /**
+     * Creates the same sphere field as {@link #sphereField}, stored off-heap in a single {@link PackedGeometry}.
+     * Packed primitives share a material table, so every sphere uses the same reflectivity.
+     *
+     * @param count The number of spheres, not counting the ground
+     * @param seed The random seed
+     * @return A builder holding the spheres, lights can still be added
+     */
+    public static SceneBuilder packedSphereField(int count, long seed) {
+        Random random = new Random(seed);
+        PackedGeometry.Builder geometry = packedBuilder();
+
+        double radius = 0.5 * cellSize(count);
+        for (int i = 0; i < count; i++) {
+            Vector center = randomPoint(random);
+            double sphereRadius = radius * (0.5 + random.nextDouble());
+            geometry.addSphere(center, sphereRadius, random.nextInt(MATERIALS.length));
+        }
+        return withGround().addObject(geometry.build());
+    }
+
+    /**
+     * Creates a random triangle soup like {@link #randomMesh}, stored off-heap in a single {@link PackedGeometry}.
+     *
+     * @param count The number of triangles
+     * @param seed The random seed
+     * @return A builder holding the triangles, lights can still be added
+     */
+    public static SceneBuilder packedMesh(int count, long seed) {
+        Random random = new Random(seed);
+        PackedGeometry.Builder geometry = packedBuilder();
+
+        double edge = cellSize(count);
+        for (int i = 0; i < count; i++) {
+            Vector v0 = randomPoint(random);
+            Vector v1 = v0.add(randomDirection(random).scale(edge));
+            Vector v2 = v0.add(randomDirection(random).scale(edge));
+            geometry.addTriangle(v0, v1, v2, random.nextInt(MATERIALS.length));
+        }
+        return withGround().addObject(geometry.build());
+    }
+
+    /**
+     * Creates a sphere field like {@link #sphereField}, stored as a single {@link SphereCloud}.
+     *
+     * @param count The number of spheres, not counting the ground
+     * @param seed The random seed
+     * @return A builder holding the spheres, lights can still be added
+     */
+    public static SceneBuilder sphereCloud(int count, long seed) {
+        Random random = new Random(seed);
+        SphereCloud.Builder cloud = SphereCloud.builder();
+        for (MaterialType type : MATERIALS) {
+            cloud.addMaterial(Material.create(type, 0.25));
+        }
+
+        double radius = 0.5 * cellSize(count);
+        for (int i = 0; i < count; i++) {
+            cloud.addSphere(
+                    MIN_X + random.nextDouble() * (MAX_X - MIN_X),
+                    MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y),
+                    MIN_Z + random.nextDouble() * (MAX_Z - MIN_Z),
+                    radius * (0.5 + random.nextDouble()),
+                    random.nextInt(MATERIALS.length));
+        }
+        return withGround().addObject(cloud.build());
+    }
+
+    /**
+     * Creates a field of randomly placed, finely tessellated spheres above a ground sphere, each a
+     * {@link ch.hslu.raytracer.objects.Mesh} with levels of detail.
+     *
+     * @param count The number of meshes, each adds segments * (segments - 2) triangles
+     * @param segments The number of segments around the equator of a mesh, half as many from pole to pole
+     * @param seed The random seed
+     * @return A builder holding the meshes, lights can still be added
+     */
+    public static SceneBuilder meshField(int count, int segments, long seed) {
+        Random random = new Random(seed);
+        SceneBuilder builder = withGround();
+
+        double radius = 0.5 * cellSize(count);
+        for (int i = 0; i < count; i++) {
+            Material material = Material.create(randomMaterial(random), random.nextDouble() * 0.5);
+            builder.addMesh(tessellateSphere(randomPoint(random), radius * (0.5 + random.nextDouble()),
+                    segments, material));
+        }
+        return builder;
+    }
+
+    /**
+     * Adds a regular grid of lights above the view volume. The intensities are scaled
+     * so the total light in the scene stays the same for any count.
+     *
+     * @param builder The builder to add the lights to
+     * @param count The number of lights
+     * @return The given builder
+     */
+    public static SceneBuilder addLightGrid(SceneBuilder builder, int count) {
+        int columns = (int) Math.ceil(Math.sqrt(count));
+        int rows = (int) Math.ceil((double) count / columns);
+        double intensity = Math.min(1.0, 1.5 / count);
+
+        for (int i = 0; i < count; i++) {
+            int column = i % columns;
+            int row = i / columns;
+            Vector position = new Vector(
+                    -6 + 12 * (column + 0.5) / columns,
+                    6,
+                    -4 + 16 * (row + 0.5) / rows
+            );
+            builder.addLight(position, Color.WHITE, intensity);
+        }
+        return builder;
+    }
+
+    /**
+     * Creates one of the generated scenes by name.
+     *
+     * @param kind One of "spheres", "cubes", "lod-cubes", "mesh", "meshes", "packed-spheres", "packed-mesh" or "cloud"
+     * @param count The number of objects
+     * @param lights The number of lights
+     * @param seed The random seed
+     * @return The built scene
+     */
+    public static Scene create(String kind, int count, int lights, long seed) {
+        SceneBuilder builder = switch (kind) {
+            case "spheres" -> sphereField(count, seed);
+            case "cubes" -> cubeGrid(count, seed);
+            case "lod-cubes" -> cubeGrid(count, seed).withLevelsOfDetail();
+            case "mesh" -> randomMesh(count, seed);
+            case "meshes" -> meshField(count, 32, seed);
+            case "packed-spheres" -> packedSphereField(count, seed);
+            case "packed-mesh" -> packedMesh(count, seed);
+            case "cloud" -> sphereCloud(count, seed);
+            default -> throw new IllegalArgumentException("Unknown scene kind: " + kind);
+        };
+        return addLightGrid(builder, lights).build();
+    }
+
+    /**
+     * Creates a packed geometry builder whose material table holds every material type in declaration order.
+     */
+    private static PackedGeometry.Builder packedBuilder() {
+        PackedGeometry.Builder geometry = PackedGeometry.builder();
+        for (MaterialType type : MATERIALS) {
+            geometry.addMaterial(Material.create(type, 0.25));
+        }
+        return geometry;
+    }
+
+    /**
+     * Creates the triangles of a sphere split into segments of longitude and latitude.
+     */
+    private static List<Triangle> tessellateSphere(Vector center, double radius, int segments, Material material) {
+        int rings = segments / 2;
+        Vector[][] points = new Vector[rings + 1][segments + 1];
+        for (int ring = 0; ring <= rings; ring++) {
+            double polar = Math.PI * ring / rings;
+            for (int segment = 0; segment <= segments; segment++) {
+                double azimuth = 2 * Math.PI * segment / segments;
+                points[ring][segment] = center.add(new Vector(
+                        Math.sin(polar) * Math.cos(azimuth),
+                        Math.cos(polar),
+                        Math.sin(polar) * Math.sin(azimuth)).scale(radius));
+            }
+        }
+
+        List<Triangle> triangles = new ArrayList<>(2 * rings * segments);
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                Vector a = points[ring][segment], b = points[ring][segment + 1];
+                Vector c = points[ring + 1][segment + 1], d = points[ring + 1][segment];
+                // The quads at the poles degenerate into a single triangle
+                if (ring > 0) {
+                    triangles.add(new Triangle(a, b, c, material));
+                }
+                if (ring < rings - 1) {
+                    triangles.add(new Triangle(a, c, d, material));
+                }
+            }
+        }
+        return triangles;
+    }
+
+    private static SceneBuilder withGround() {
+        return new SceneBuilder()
+                .addSphere(new Vector(0, -1001, 0), 1000, MaterialType.JADE, 0.3);
+    }
+
+    /**
+     * Gets the edge length of the cube each object gets when the view volume is split evenly.
+     */
+    private static double cellSize(int count) {
+        double volume = (MAX_X - MIN_X) * (MAX_Y - MIN_Y) * (MAX_Z - MIN_Z);
+        return Math.cbrt(volume / Math.max(1, count));
+    }
+
+    private static Vector randomPoint(Random random) {
+        return new Vector(
+                MIN_X + random.nextDouble() * (MAX_X - MIN_X),
+                MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y),
+                MIN_Z + random.nextDouble() * (MAX_Z - MIN_Z)
+        );
+    }
+
+    private static Vector randomDirection(Random random) {
+        return new Vector(random.nextGaussian(), random.nextGaussian(), random.nextGaussian()).normalize();
+    }
+
+    private static MaterialType randomMaterial(Random random) {
+        return MATERIALS[random.nextInt(MATERIALS.length)];
+    }
+}
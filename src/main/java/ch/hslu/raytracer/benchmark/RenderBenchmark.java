@@ -0,0 +1,283 @@
+package ch.hslu.raytracer.benchmark;
+
+import ch.hslu.raytracer.RenderEngine;
+import ch.hslu.raytracer.RenderSettings;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+import ch.hslu.raytracer.scene.SceneSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * End-to-end benchmark measuring whole-frame render time while sweeping one scene or render
+ * dimension at a time: object count, triangle count, light count, reflection depth, resolution
+ * and thread count. Results are written as CSV so scaling curves can be plotted and compared.
+ * <p>
+ * Arguments are given as key=value pairs, e.g. {@code maxObjects=1000000 runs=5 output=results.csv}.
+ * With {@code snapshots=<directory>} the scenes are stored as snapshots and loaded on later runs,
+ * the build time then measures the snapshot load.
+ */
+public class RenderBenchmark {
+
+    private static final String HEADER = "sweep,scene,objects,triangles,lights,reflection_depth,width,height,threads,"
+            + "build_ms,ms_per_frame,rays,rays_per_s,peak_heap_mb,gc_ms";
+
+    private final int width;
+    private final int height;
+    private final int runs;
+    private final long seed;
+    private final Path snapshotDirectory; // Loads the scenes from snapshots in this directory, null builds them
+
+    public RenderBenchmark(int width, int height, int runs, long seed) {
+        this(width, height, runs, seed, null);
+    }
+
+    public RenderBenchmark(int width, int height, int runs, long seed, Path snapshotDirectory) {
+        this.width = width;
+        this.height = height;
+        this.runs = runs;
+        this.seed = seed;
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseOptions(args);
+        int width = Integer.parseInt(options.getOrDefault("width", "320"));
+        int height = Integer.parseInt(options.getOrDefault("height", "180"));
+        int runs = Integer.parseInt(options.getOrDefault("runs", "3"));
+        long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+        int maxObjects = Integer.parseInt(options.getOrDefault("maxObjects", "10000"));
+        int maxLights = Integer.parseInt(options.getOrDefault("maxLights", "1000"));
+        int maxThreads = Integer.parseInt(options.getOrDefault("maxThreads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        File output = new File(options.getOrDefault("output", "benchmark_results.csv"));
+        Path snapshots = options.containsKey("snapshots") ? Path.of(options.get("snapshots")) : null;
+
+        RenderBenchmark benchmark = new RenderBenchmark(width, height, runs, seed, snapshots);
+        List<Case> cases = createCases(maxObjects, maxLights, maxThreads);
+
+        // Warm up the JIT so the first sweep isn't dominated by interpretation
+        benchmark.run(new Case("warmup", "spheres", 100, 2, 3, 0.5, maxThreads));
+
+        try (PrintWriter writer = new PrintWriter(output)) {
+            writer.println(HEADER);
+            for (Case benchmarkCase : cases) {
+                Result result = benchmark.run(benchmarkCase);
+                writer.println(result.toCsv());
+                writer.flush();
+                System.out.println(result.toCsv());
+            }
+        }
+        System.out.println("Benchmark results written to " + output.getAbsolutePath());
+    }
+
+    /**
+     * Creates the sweeps, each varies a single dimension around a small base scene.
+     */
+    static List<Case> createCases(int maxObjects, int maxLights, int maxThreads) {
+        List<Case> cases = new ArrayList<>();
+        for (int count = 10; count <= maxObjects; count *= 10) {
+            cases.add(new Case("objects", "spheres", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 10; count * 12 <= maxObjects; count *= 10) {
+            cases.add(new Case("triangles", "cubes", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 10; count * 12 <= maxObjects; count *= 10) {
+            cases.add(new Case("triangles", "lod-cubes", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 10; count <= maxObjects; count *= 10) {
+            cases.add(new Case("triangles", "mesh", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 1; count * 960 <= maxObjects * 10; count *= 10) {
+            cases.add(new Case("triangles", "meshes", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 10; count <= maxObjects; count *= 10) {
+            cases.add(new Case("objects", "packed-spheres", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 10; count <= maxObjects; count *= 10) {
+            cases.add(new Case("objects", "cloud", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 10; count <= maxObjects; count *= 10) {
+            cases.add(new Case("triangles", "packed-mesh", count, 2, 3, 1, maxThreads));
+        }
+        for (int count = 1; count <= maxLights; count *= 10) {
+            cases.add(new Case("lights", "spheres", 100, count, 3, 1, maxThreads));
+        }
+        for (int depth : new int[]{0, 1, 2, 5, 10}) {
+            cases.add(new Case("reflection_depth", "spheres", 100, 2, depth, 1, maxThreads));
+        }
+        for (double scale : new double[]{0.25, 0.5, 1, 2}) {
+            cases.add(new Case("resolution", "spheres", 100, 2, 3, scale, maxThreads));
+        }
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            cases.add(new Case("threads", "spheres", 100, 2, 3, 1, threads));
+        }
+        return cases;
+    }
+
+    /**
+     * Builds the scene of a case and renders it several times, reporting the median frame time.
+     */
+    Result run(Case benchmarkCase) {
+        long buildStart = System.nanoTime();
+        Scene scene = createScene(benchmarkCase);
+        double buildMillis = (System.nanoTime() - buildStart) / 1e6;
+
+        RenderSettings settings = RenderSettings.builder()
+                .width(width)
+                .height(height)
+                .resolutionScale(benchmarkCase.scale())
+                .maxReflectionDepth(benchmarkCase.reflectionDepth())
+                .numThreads(benchmarkCase.threads())
+                .build();
+        Camera camera = Camera.createDefault();
+
+        double[] frameMillis = new double[runs];
+        long rays = 0;
+        long peakHeap = 0;
+        long gcMillis = 0;
+
+        try (RenderEngine engine = new RenderEngine(benchmarkCase.threads())) {
+            for (int i = 0; i < runs; i++) {
+                System.gc();
+                resetPeakHeap();
+                long gcBefore = collectionTime();
+                long raysBefore = engine.getTotalRayCount();
+
+                long start = System.nanoTime();
+                engine.render(scene, camera, settings).get();
+                frameMillis[i] = (System.nanoTime() - start) / 1e6;
+
+                rays = engine.getTotalRayCount() - raysBefore;
+                peakHeap = Math.max(peakHeap, peakHeap());
+                gcMillis += collectionTime() - gcBefore;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Benchmark interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Rendering failed", e.getCause());
+        }
+
+        Arrays.sort(frameMillis);
+        double median = frameMillis[runs / 2];
+        return new Result(benchmarkCase, settings.getRenderWidth(), settings.getRenderHeight(), buildMillis,
+                median, rays, rays / (median / 1000), peakHeap / (1024.0 * 1024.0), gcMillis / runs);
+    }
+
+    /**
+     * Generates the scene of a case, or loads its snapshot once one was written by an earlier run.
+     */
+    private Scene createScene(Case benchmarkCase) {
+        Supplier<Scene> generator = () -> ProceduralScenes.create(benchmarkCase.scene(), benchmarkCase.objects(),
+                benchmarkCase.lights(), seed);
+        if (snapshotDirectory == null) {
+            return generator.get();
+        }
+        String name = benchmarkCase.scene() + "-" + benchmarkCase.objects() + "-" + benchmarkCase.lights() + "-" + seed;
+        long hash = SceneSnapshot.hash(name, ProceduralScenes.VERSION);
+        return SceneSnapshot.loadOrBuild(snapshotDirectory.resolve(name + ".snapshot"), hash, generator);
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static long collectionTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, collector.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    /**
+     * A single benchmark configuration.
+     *
+     * @param sweep The dimension this case belongs to
+     * @param scene The generator used, see {@link ProceduralScenes#create}
+     * @param objects The number of generated objects
+     * @param lights The number of lights
+     * @param reflectionDepth The maximum reflection depth
+     * @param scale The resolution scale applied to the benchmark resolution
+     * @param threads The number of worker threads
+     */
+    record Case(String sweep, String scene, int objects, int lights, int reflectionDepth, double scale, int threads) {
+
+        int triangles() {
+            return switch (scene) {
+                case "cubes", "lod-cubes" -> objects * 12;
+                case "meshes" -> objects * 960; // 32 segments per mesh
+                case "mesh", "packed-mesh" -> objects;
+                default -> 0;
+            };
+        }
+    }
+
+    /**
+     * The measurements of a case.
+     */
+    record Result(Case benchmarkCase, int width, int height, double buildMillis, double frameMillis, long rays,
+                  double raysPerSecond, double peakHeapMegabytes, long gcMillis) {
+
+        String toCsv() {
+            return String.join(",",
+                    benchmarkCase.sweep(),
+                    benchmarkCase.scene(),
+                    String.valueOf(benchmarkCase.objects()),
+                    String.valueOf(benchmarkCase.triangles()),
+                    String.valueOf(benchmarkCase.lights()),
+                    String.valueOf(benchmarkCase.reflectionDepth()),
+                    String.valueOf(width),
+                    String.valueOf(height),
+                    String.valueOf(benchmarkCase.threads()),
+                    String.format(Locale.ROOT, "%.2f", buildMillis),
+                    String.format(Locale.ROOT, "%.2f", frameMillis),
+                    String.valueOf(rays),
+                    String.format(Locale.ROOT, "%.0f", raysPerSecond),
+                    String.format(Locale.ROOT, "%.1f", peakHeapMegabytes),
+                    String.valueOf(gcMillis));
+        }
+    }
+}
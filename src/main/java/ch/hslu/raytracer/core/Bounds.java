@@ -0,0 +1,48 @@
+package ch.hslu.raytracer.core;
+
+/**
+ * Axis-aligned bounding box.
+ */
+public record Bounds(Vector min, Vector max) {
+
+    /**
+     * Creates the smallest box containing all given points.
+     */
+    public static Bounds of(Vector... points) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        for (Vector p : points) {
+            minX = Math.min(minX, p.x());
+            minY = Math.min(minY, p.y());
+            minZ = Math.min(minZ, p.z());
+            maxX = Math.max(maxX, p.x());
+            maxY = Math.max(maxY, p.y());
+            maxZ = Math.max(maxZ, p.z());
+        }
+        return new Bounds(new Vector(minX, minY, minZ), new Vector(maxX, maxY, maxZ));
+    }
+
+    /**
+     * Creates the box around a sphere.
+     */
+    public static Bounds ofSphere(Vector center, double radius) {
+        Vector extent = new Vector(radius, radius, radius);
+        return new Bounds(center.subtract(extent), center.add(extent));
+    }
+
+    /**
+     * Gets the eight corners of the box.
+     */
+    public Vector[] corners() {
+        return new Vector[]{
+                new Vector(min.x(), min.y(), min.z()),
+                new Vector(max.x(), min.y(), min.z()),
+                new Vector(min.x(), max.y(), min.z()),
+                new Vector(max.x(), max.y(), min.z()),
+                new Vector(min.x(), min.y(), max.z()),
+                new Vector(max.x(), min.y(), max.z()),
+                new Vector(min.x(), max.y(), max.z()),
+                new Vector(max.x(), max.y(), max.z())
+        };
+    }
+}
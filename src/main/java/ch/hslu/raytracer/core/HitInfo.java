@@ -1,19 +1,44 @@
 package ch.hslu.raytracer.core;
 
+import ch.hslu.raytracer.materials.Material;
 import ch.hslu.raytracer.objects.Object3D;
 import lombok.Getter;
 
 @Getter
 public class HitInfo {
     private final Object3D object;
+    private final Material material; // Material at the hit point, objects holding many primitives may mix materials
     private final Vector hitPoint;
     private final Vector normal;
     private final double distance;
+    private final double u;       // Texture coordinates of the hit point
+    private final double v;
+    private final double uvScale; // Texture coordinate units per world unit around the hit point
+    private final int level;      // Level of detail of the surface that was hit, 0 for the full geometry
 
     public HitInfo(Object3D object, Vector hitPoint, Vector normal, double distance) {
+        this(object, hitPoint, normal, distance, 0, 0, 0);
+    }
+
+    public HitInfo(Object3D object, Vector hitPoint, Vector normal, double distance, double u, double v, double uvScale) {
+        this(object, object.getMaterial(), hitPoint, normal, distance, u, v, uvScale);
+    }
+
+    public HitInfo(Object3D object, Material material, Vector hitPoint, Vector normal, double distance,
+                   double u, double v, double uvScale) {
+        this(object, material, hitPoint, normal, distance, u, v, uvScale, 0);
+    }
+
+    public HitInfo(Object3D object, Material material, Vector hitPoint, Vector normal, double distance,
+                   double u, double v, double uvScale, int level) {
         this.object = object;
+        this.material = material;
         this.hitPoint = hitPoint;
         this.normal = normal;
         this.distance = distance;
+        this.u = u;
+        this.v = v;
+        this.uvScale = uvScale;
+        this.level = level;
     }
-}
\ No newline at end of file
+}
@@ -1,10 +1,63 @@
 package ch.hslu.raytracer.core;
 
-public record Ray(Vector origin, Vector direction) {
+import ch.hslu.raytracer.objects.Object3D;
 
-    public Ray(Vector origin, Vector direction) {
+/**
+ * A ray with an optional cone describing the footprint of the pixel it was traced for.
+ * The footprint at distance t is {@code coneWidth + coneSpread * t}, used to pick texture levels
+ * and levels of detail. The depth counts the reflections the ray has gone through.
+ * <p>
+ * Shadow and reflection rays know the object they start from and the level of detail of the surface
+ * they start on, so they see that object at the same level as the hit that spawned them and can't hit
+ * a coarser version of the surface they leave.
+ */
+public record Ray(Vector origin, Vector direction, double coneWidth, double coneSpread, int depth,
+                  Object3D source, int sourceLevel) {
+
+    public Ray(Vector origin, Vector direction, double coneWidth, double coneSpread, int depth,
+               Object3D source, int sourceLevel) {
         this.origin = origin;
         this.direction = direction.normalize();
+        this.coneWidth = coneWidth;
+        this.coneSpread = coneSpread;
+        this.depth = depth;
+        this.source = source;
+        this.sourceLevel = sourceLevel;
+    }
+
+    /**
+     * Creates a ray that doesn't start from an object, e.g. a primary ray.
+     */
+    public Ray(Vector origin, Vector direction, double coneWidth, double coneSpread, int depth) {
+        this(origin, direction, coneWidth, coneSpread, depth, null, 0);
+    }
+
+    /**
+     * Creates a ray starting from a hit, seeing the hit object at the level of detail it was hit at.
+     *
+     * @param hit The hit the ray starts from
+     * @param direction The direction of the ray
+     * @param coneWidth The width of the footprint at the hit
+     * @param coneSpread The growth of the footprint per unit distance
+     * @param depth The number of reflections the ray has gone through
+     */
+    public Ray(HitInfo hit, Vector direction, double coneWidth, double coneSpread, int depth) {
+        this(hit.getHitPoint(), direction, coneWidth, coneSpread, depth, hit.getObject(), hit.getLevel());
+    }
+
+    public Ray(Vector origin, Vector direction, double coneWidth, double coneSpread) {
+        this(origin, direction, coneWidth, coneSpread, 0);
+    }
+
+    public Ray(Vector origin, Vector direction) {
+        this(origin, direction, 0, 0);
+    }
+
+    /**
+     * Gets the width of the ray's footprint at the given distance.
+     */
+    public double footprintAt(double distance) {
+        return coneWidth + coneSpread * distance;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,7 @@
+package ch.hslu.raytracer.core;
+
+/**
+ * Texture coordinates of a vertex, both usually in the range [0, 1].
+ */
+public record TexCoord(double u, double v) {
+}
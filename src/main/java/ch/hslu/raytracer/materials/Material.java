@@ -12,6 +12,7 @@ public class Material {
     private final Color specular;
     private final double shininess;
     private final double reflectivity;
+    private final Texture texture; // Modulates the ambient and diffuse colors, null for a plain material
 
     /**
      * Creates a material with the specified properties.
@@ -24,12 +25,39 @@ public class Material {
      * @param reflectivity The reflectivity factor (0-1)
      */
     public Material(MaterialType type, Color ambient, Color diffuse, Color specular, double shininess, double reflectivity) {
+        this(type, ambient, diffuse, specular, shininess, reflectivity, null);
+    }
+
+    /**
+     * Creates a textured material with the specified properties.
+     *
+     * @param type        The type of material
+     * @param ambient     The ambient color component
+     * @param diffuse     The diffuse color component
+     * @param specular    The specular color component
+     * @param shininess   The shininess factor (0-1)
+     * @param reflectivity The reflectivity factor (0-1)
+     * @param texture     The texture multiplied with the ambient and diffuse colors, or null
+     */
+    public Material(MaterialType type, Color ambient, Color diffuse, Color specular, double shininess, double reflectivity,
+                    Texture texture) {
         this.type = type;
         this.ambient = ambient;
         this.diffuse = diffuse;
         this.specular = specular;
         this.shininess = shininess;
         this.reflectivity = Math.max(0, Math.min(1, reflectivity)); // Clamp reflectivity between 0 and 1
+        this.texture = texture;
+    }
+
+    /**
+     * Creates a copy of this material with the given texture.
+     *
+     * @param texture The texture multiplied with the ambient and diffuse colors
+     * @return A new Material instance
+     */
+    public Material withTexture(Texture texture) {
+        return new Material(type, ambient, diffuse, specular, shininess, reflectivity, texture);
     }
 
     /**
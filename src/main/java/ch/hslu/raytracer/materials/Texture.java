@@ -0,0 +1,303 @@
+package ch.hslu.raytracer.materials;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.util.Iterator;
+
+/**
+ * Mip-mapped image texture whose texels are loaded lazily in fixed-size tiles.
+ * <p>
+ * Level 0 is the full image, every further level halves the resolution. Tiles of any level are
+ * loaded on first use and kept in a {@link TileCache}, so only the tiles a render actually touches
+ * are ever in memory. Tiles of an image in memory are box-filtered from the image. An image file is
+ * decoded once, when the first tile is needed, into a {@link TilePyramid} holding all levels on disk.
+ * <p>
+ * Closing a texture deletes its pyramid and evicts its tiles. A texture dropped without being closed
+ * deletes its pyramid once it has been garbage collected, which the cache allows after evicting its tiles.
+ */
+public class Texture implements Closeable {
+    public static final int TILE_SIZE = 64;
+
+    // Levels above this factor are read subsampled and only the remaining factor is box-filtered
+    private static final int MAX_FILTER_FACTOR = 4;
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final RegionReader reader; // Null for image files, they are read from their pyramid
+    private final File file;           // Null for images in memory
+    private final TileCache cache;
+    private final int width;
+    private final int height;
+    private final int levelCount;
+    private volatile TilePyramid pyramid; // Built on the first tile miss of an image file
+    private Cleaner.Cleanable cleanable;  // Closes the pyramid, guarded by this
+
+    private Texture(RegionReader reader, File file, int width, int height, TileCache cache) {
+        this.reader = reader;
+        this.file = file;
+        this.cache = cache;
+        this.width = width;
+        this.height = height;
+        this.levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    }
+
+    /**
+     * Opens an image file as a texture using the shared tile cache. Only the image header is read here,
+     * the image is decoded when the first tile is needed.
+     *
+     * @param file The image file
+     * @return The texture
+     * @throws IOException If the file can't be read or has an unsupported format
+     */
+    public static Texture load(File file) throws IOException {
+        return load(file, TileCache.shared());
+    }
+
+    /**
+     * Opens an image file as a texture. Only the image header is read here, the image is decoded
+     * when the first tile is needed.
+     *
+     * @param file The image file
+     * @param cache The cache to keep the loaded tiles in
+     * @return The texture
+     * @throws IOException If the file can't be read or has an unsupported format
+     */
+    public static Texture load(File file, TileCache cache) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            ImageReader imageReader = openReader(stream, file, true);
+            try {
+                return new Texture(null, file, imageReader.getWidth(0), imageReader.getHeight(0), cache);
+            } finally {
+                imageReader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Creates a texture from an image already in memory using the shared tile cache.
+     *
+     * @param image The image
+     * @return The texture
+     */
+    public static Texture of(BufferedImage image) {
+        return of(image, TileCache.shared());
+    }
+
+    /**
+     * Creates a texture from an image already in memory.
+     *
+     * @param image The image
+     * @param cache The cache to keep the mip level tiles in
+     * @return The texture
+     */
+    public static Texture of(BufferedImage image, TileCache cache) {
+        return new Texture(new ImageRegionReader(image), null, image.getWidth(), image.getHeight(), cache);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLevelCount() {
+        return levelCount;
+    }
+
+    /**
+     * Samples the texture with wrapping texture coordinates. The mip level is chosen so that
+     * one texel roughly covers the given footprint.
+     *
+     * @param u The horizontal texture coordinate
+     * @param v The vertical texture coordinate, 0 is the top of the image
+     * @param footprint The width of the area to sample in texture coordinate units
+     * @return The color of the texture
+     */
+    public Color sample(double u, double v, double footprint) {
+        int level = selectLevel(footprint);
+        int levelWidth = Math.max(1, width >> level);
+        int levelHeight = Math.max(1, height >> level);
+
+        int x = Math.min(levelWidth - 1, (int) ((u - Math.floor(u)) * levelWidth));
+        int y = Math.min(levelHeight - 1, (int) ((v - Math.floor(v)) * levelHeight));
+        return new Color(texel(level, x, y));
+    }
+
+    /**
+     * Selects the mip level whose texels are about as large as the footprint.
+     */
+    int selectLevel(double footprint) {
+        double texels = footprint * Math.max(width, height);
+        if (!(texels > 1)) {
+            return 0;
+        }
+        int level = (int) Math.floor(Math.log(texels) / Math.log(2));
+        return Math.min(levelCount - 1, level);
+    }
+
+    private int texel(int level, int x, int y) {
+        int tileX = x / TILE_SIZE;
+        int tileY = y / TILE_SIZE;
+        int[] tile = cache.get(this, level, tileX, tileY, () -> loadTile(level, tileX, tileY));
+        int tileWidth = tileWidth(level, tileX);
+        return tile[(y - tileY * TILE_SIZE) * tileWidth + (x - tileX * TILE_SIZE)];
+    }
+
+    private int tileWidth(int level, int tileX) {
+        return Math.min(TILE_SIZE, Math.max(1, width >> level) - tileX * TILE_SIZE);
+    }
+
+    private int tileHeight(int level, int tileY) {
+        return Math.min(TILE_SIZE, Math.max(1, height >> level) - tileY * TILE_SIZE);
+    }
+
+    /**
+     * Loads a tile. Image files read it from their pyramid, images in memory box-filter the source
+     * region of the tile down to its level.
+     */
+    private int[] loadTile(int level, int tileX, int tileY) {
+        if (file != null) {
+            try {
+                return pyramid().readTile(level, tileX, tileY);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read texture tile from " + file, e);
+            }
+        }
+
+        int tileWidth = tileWidth(level, tileX);
+        int tileHeight = tileHeight(level, tileY);
+        int factor = 1 << level;
+
+        // Source region covered by the tile, clipped to the image
+        int sourceX = tileX * TILE_SIZE * factor;
+        int sourceY = tileY * TILE_SIZE * factor;
+        int sourceWidth = Math.min(tileWidth * factor, width - sourceX);
+        int sourceHeight = Math.min(tileHeight * factor, height - sourceY);
+
+        int subsampling = Math.max(1, factor / MAX_FILTER_FACTOR);
+        int filter = factor / subsampling;
+        int readWidth = (sourceWidth + subsampling - 1) / subsampling;
+        int readHeight = (sourceHeight + subsampling - 1) / subsampling;
+        int[] source = reader.read(sourceX, sourceY, sourceWidth, sourceHeight, subsampling);
+
+        int[] tile = new int[tileWidth * tileHeight];
+        for (int y = 0; y < tileHeight; y++) {
+            for (int x = 0; x < tileWidth; x++) {
+                int red = 0, green = 0, blue = 0, count = 0;
+                int maxY = Math.min(readHeight, (y + 1) * filter);
+                int maxX = Math.min(readWidth, (x + 1) * filter);
+                for (int sy = y * filter; sy < maxY; sy++) {
+                    for (int sx = x * filter; sx < maxX; sx++) {
+                        int rgb = source[sy * readWidth + sx];
+                        red += (rgb >> 16) & 0xFF;
+                        green += (rgb >> 8) & 0xFF;
+                        blue += rgb & 0xFF;
+                        count++;
+                    }
+                }
+                count = Math.max(1, count);
+                tile[y * tileWidth + x] = (red / count) << 16 | (green / count) << 8 | (blue / count);
+            }
+        }
+        return tile;
+    }
+
+    // Decodes the image file only once, however many threads miss their first tile at the same time
+    private TilePyramid pyramid() throws IOException {
+        TilePyramid result = pyramid;
+        if (result == null) {
+            synchronized (this) {
+                result = pyramid;
+                if (result == null) {
+                    try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+                        ImageReader imageReader = openReader(stream, file, false);
+                        try {
+                            result = TilePyramid.build(imageReader, levelCount);
+                        } finally {
+                            imageReader.dispose();
+                        }
+                    }
+                    // The action must not refer to the texture, or the texture would never become unreachable
+                    TilePyramid built = result;
+                    cleanable = CLEANER.register(this, () -> release(built));
+                    pyramid = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the texture's pyramid and evicts its tiles from the cache. The texture stays usable, an image
+     * file is decoded again when the next tile is needed. It must not be closed while it is being sampled.
+     */
+    @Override
+    public void close() {
+        Cleaner.Cleanable released;
+        synchronized (this) {
+            released = cleanable;
+            cleanable = null;
+            pyramid = null;
+        }
+        if (released != null) {
+            released.clean();
+        }
+        cache.invalidate(this);
+    }
+
+    private static void release(TilePyramid pyramid) {
+        try {
+            pyramid.close();
+        } catch (IOException e) {
+            System.err.println("Failed to delete texture pyramid: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Finds a reader for the image in the stream.
+     *
+     * @param seekForwardOnly False if the reader has to decode several regions of the image
+     */
+    private static ImageReader openReader(ImageInputStream stream, File file, boolean seekForwardOnly)
+            throws IOException {
+        Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+        if (readers == null || !readers.hasNext()) {
+            throw new IOException("Unsupported texture format: " + file);
+        }
+        ImageReader imageReader = readers.next();
+        imageReader.setInput(stream, seekForwardOnly, true);
+        return imageReader;
+    }
+
+    /**
+     * Reads a region of the source image, taking every n-th pixel in both directions.
+     */
+    private interface RegionReader {
+        int[] read(int x, int y, int width, int height, int subsampling);
+    }
+
+    private record ImageRegionReader(BufferedImage image) implements RegionReader {
+        @Override
+        public int[] read(int x, int y, int width, int height, int subsampling) {
+            int readWidth = (width + subsampling - 1) / subsampling;
+            int readHeight = (height + subsampling - 1) / subsampling;
+            int[] pixels = new int[readWidth * readHeight];
+            for (int j = 0; j < readHeight; j++) {
+                for (int i = 0; i < readWidth; i++) {
+                    pixels[j * readWidth + i] = image.getRGB(x + i * subsampling, y + j * subsampling);
+                }
+            }
+            return pixels;
+        }
+    }
+}
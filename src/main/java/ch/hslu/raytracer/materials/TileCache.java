@@ -0,0 +1,153 @@
+package ch.hslu.raytracer.materials;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Approximately least-recently-used cache of texture tiles with a fixed memory cap. All textures
+ * share one cache by default, so the texture memory of a render stays bounded no matter how large
+ * or how many textures a scene references.
+ * <p>
+ * Lookups don't lock: every tile carries the value of a clock that advances on each load, and a hit
+ * only writes its tile's stamp if the clock has moved since. Once the cache is over its cap, the tiles
+ * with the oldest stamps are evicted in one batch until it is an eighth below the cap.
+ */
+public class TileCache {
+    private static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final TileCache SHARED = new TileCache(DEFAULT_MAX_BYTES);
+
+    private final Map<Key, Tile> tiles = new ConcurrentHashMap<>(256);
+    private final AtomicLong clock = new AtomicLong();     // Advanced on every load
+    private final AtomicLong usedBytes = new AtomicLong();
+    private volatile long maxBytes;
+
+    /**
+     * Creates a cache holding at most the given number of bytes of texels.
+     *
+     * @param maxBytes The memory cap in bytes
+     */
+    public TileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the cache shared by all textures that don't specify their own.
+     */
+    public static TileCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Changes the memory cap, evicting tiles right away if the cache is over the new cap.
+     *
+     * @param maxBytes The memory cap in bytes
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes.get();
+    }
+
+    /**
+     * Gets a tile, loading it with the given loader if it isn't cached.
+     * The loader runs without any lock held, so two threads may load the same tile at once.
+     *
+     * @param texture The texture the tile belongs to
+     * @param level The mip level of the tile
+     * @param tileX The column of the tile in the level
+     * @param tileY The row of the tile in the level
+     * @param loader Loads the texels of the tile
+     * @return The texels of the tile as packed RGB
+     */
+    int[] get(Texture texture, int level, int tileX, int tileY, Supplier<int[]> loader) {
+        Key key = new Key(texture, level, tileX, tileY);
+        Tile cached = tiles.get(key);
+        if (cached != null) {
+            // Only touch the shared stamp when it's outdated, so hot tiles aren't written on every sample
+            long now = clock.get();
+            if (cached.lastUse != now) {
+                cached.lastUse = now;
+            }
+            return cached.texels;
+        }
+
+        int[] texels = loader.get();
+        Tile previous = tiles.put(key, new Tile(texels, clock.incrementAndGet()));
+        usedBytes.addAndGet(bytes(texels) - (previous != null ? bytes(previous.texels) : 0));
+        if (usedBytes.get() > maxBytes) {
+            evict();
+        }
+        return texels;
+    }
+
+    /**
+     * Evicts all tiles of a texture, e.g. because it was closed.
+     *
+     * @param texture The texture whose tiles to evict
+     */
+    void invalidate(Texture texture) {
+        for (Map.Entry<Key, Tile> entry : tiles.entrySet()) {
+            if (entry.getKey().texture() == texture && tiles.remove(entry.getKey(), entry.getValue())) {
+                usedBytes.addAndGet(-bytes(entry.getValue().texels));
+            }
+        }
+    }
+
+    /**
+     * Evicts the least recently used tiles until the cache is an eighth below its cap, so the
+     * cost of sorting the tiles is shared by the loads until the next eviction.
+     */
+    private synchronized void evict() {
+        long max = maxBytes;
+        if (usedBytes.get() <= max) {
+            return;
+        }
+
+        // Snapshot the stamps, they keep changing while the candidates are sorted
+        Candidate[] candidates = tiles.entrySet().stream()
+                .map(entry -> new Candidate(entry.getKey(), entry.getValue(), entry.getValue().lastUse))
+                .toArray(Candidate[]::new);
+        Arrays.sort(candidates, Comparator.comparingLong(Candidate::lastUse));
+
+        long target = max - max / 8;
+        for (Candidate candidate : candidates) {
+            if (usedBytes.get() <= target) {
+                break;
+            }
+            if (tiles.remove(candidate.key(), candidate.tile())) {
+                usedBytes.addAndGet(-bytes(candidate.tile().texels));
+            }
+        }
+    }
+
+    private static long bytes(int[] tile) {
+        return (long) tile.length * Integer.BYTES;
+    }
+
+    private record Key(Texture texture, int level, int tileX, int tileY) {
+    }
+
+    private static final class Tile {
+        private final int[] texels;
+        private volatile long lastUse; // Value of the clock when the tile was last used
+
+        private Tile(int[] texels, long lastUse) {
+            this.texels = texels;
+            this.lastUse = lastUse;
+        }
+    }
+
+    private record Candidate(Key key, Tile tile, long lastUse) {
+    }
+}
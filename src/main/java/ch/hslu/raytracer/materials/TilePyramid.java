@@ -0,0 +1,221 @@
+package ch.hslu.raytracer.materials;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * All mip levels of an image, cut into tiles and stored in a temporary file.
+ * <p>
+ * The source image is decoded in bands of whole tile rows, so only one band of it is in memory at a
+ * time. Each level keeps one band of its own, which is written to the file once it is full, and averages
+ * every two of its rows into a row of the next smaller level. A tile is later read with a single positional
+ * read, which any number of threads may do at once. Tiles are stored padded to the full tile size, so their
+ * offset follows from their position. The file is deleted once the pyramid is closed or the JVM exits.
+ */
+final class TilePyramid implements Closeable {
+    private static final int TILE_SIZE = Texture.TILE_SIZE;
+    private static final int TILE_BYTES = TILE_SIZE * TILE_SIZE * Integer.BYTES;
+
+    // Most readers decode a band from the start of the image, so a band spans as many tile rows as fit in this
+    private static final int MAX_BAND_PIXELS = 1 << 20;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final long[] levelOffsets; // Position of the first tile of each level in the file
+
+    private TilePyramid(FileChannel channel, int width, int height, long[] levelOffsets) {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.levelOffsets = levelOffsets;
+    }
+
+    /**
+     * Decodes an image band by band and writes its pyramid to a temporary file.
+     *
+     * @param imageReader A reader on the image that may seek backwards, so it can decode several regions
+     * @param levelCount The number of mip levels
+     * @return The pyramid
+     * @throws IOException If the image can't be decoded or the file can't be written
+     */
+    static TilePyramid build(ImageReader imageReader, int levelCount) throws IOException {
+        int width = imageReader.getWidth(0);
+        int height = imageReader.getHeight(0);
+
+        long[] levelOffsets = new long[levelCount];
+        long offset = 0;
+        for (int level = 0; level < levelCount; level++) {
+            levelOffsets[level] = offset;
+            offset += (long) tileCount(width, level) * tileCount(height, level) * TILE_BYTES;
+        }
+
+        Path file = Files.createTempFile("texture", ".mips");
+        file.toFile().deleteOnExit();
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        try {
+            LevelWriter writer = null;
+            for (int level = levelCount - 1; level >= 0; level--) {
+                writer = new LevelWriter(channel, levelOffsets[level], Math.max(1, width >> level),
+                        Math.max(1, height >> level), writer);
+            }
+
+            int bandRows = Math.max(1, MAX_BAND_PIXELS / width / TILE_SIZE) * TILE_SIZE;
+            ImageReadParam param = imageReader.getDefaultReadParam();
+            int[] row = new int[width];
+            for (int bandY = 0; bandY < height; bandY += bandRows) {
+                int rows = Math.min(bandRows, height - bandY);
+                param.setSourceRegion(new Rectangle(0, bandY, width, rows));
+                BufferedImage band = imageReader.read(0, param);
+                for (int y = 0; y < rows; y++) {
+                    band.getRGB(0, y, width, 1, row, 0, width);
+                    writer.addRow(row);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return new TilePyramid(channel, width, height, levelOffsets);
+    }
+
+    /**
+     * Reads the texels of a tile.
+     *
+     * @return The texels as packed RGB, one row of the tile's actual width after the other
+     * @throws IOException If the file can't be read, e.g. because the pyramid was closed
+     */
+    int[] readTile(int level, int tileX, int tileY) throws IOException {
+        int levelWidth = Math.max(1, width >> level);
+        int levelHeight = Math.max(1, height >> level);
+        int tileWidth = Math.min(TILE_SIZE, levelWidth - tileX * TILE_SIZE);
+        int tileHeight = Math.min(TILE_SIZE, levelHeight - tileY * TILE_SIZE);
+
+        ByteBuffer buffer = ByteBuffer.allocate(TILE_BYTES);
+        long position = levelOffsets[level] + ((long) tileY * tileCount(width, level) + tileX) * TILE_BYTES;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Texture pyramid is truncated");
+            }
+        }
+        buffer.flip();
+
+        IntBuffer texels = buffer.asIntBuffer();
+        int[] tile = new int[tileWidth * tileHeight];
+        for (int y = 0; y < tileHeight; y++) {
+            texels.get(y * TILE_SIZE, tile, y * tileWidth, tileWidth);
+        }
+        return tile;
+    }
+
+    /**
+     * Closes the file, which deletes it.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static int tileCount(int size, int level) {
+        return (Math.max(1, size >> level) + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Writes the rows of one level as they arrive and box-filters them into the next smaller level.
+     */
+    private static final class LevelWriter {
+        private final FileChannel channel;
+        private final long levelOffset;
+        private final int width;
+        private final int height;
+        private final LevelWriter next; // Null for the smallest level
+        private final int nextWidth;
+        private final int nextHeight;
+        private final int[] band;       // The rows of the current band, each of the level's width
+        private final int[] sums;       // Red, green, blue and count per texel of the next level's row
+        private final int[] nextRow;
+        private final ByteBuffer tile = ByteBuffer.allocate(TILE_BYTES);
+        private int y;                  // The row the next call adds
+
+        private LevelWriter(FileChannel channel, long levelOffset, int width, int height, LevelWriter next) {
+            this.channel = channel;
+            this.levelOffset = levelOffset;
+            this.width = width;
+            this.height = height;
+            this.next = next;
+            this.nextWidth = Math.max(1, width >> 1);
+            this.nextHeight = Math.max(1, height >> 1);
+            this.band = new int[width * TILE_SIZE];
+            this.sums = new int[nextWidth * 4];
+            this.nextRow = new int[nextWidth];
+        }
+
+        /**
+         * Adds the next row of the level, writing the band once it is full or the level is complete.
+         */
+        private void addRow(int[] row) throws IOException {
+            System.arraycopy(row, 0, band, (y % TILE_SIZE) * width, width);
+            if (next != null) {
+                filter(row);
+            }
+            y++;
+            if (y % TILE_SIZE == 0 || y == height) {
+                writeBand();
+            }
+        }
+
+        private void filter(int[] row) throws IOException {
+            int nextY = y >> 1;
+            if (nextY >= nextHeight) {
+                return;
+            }
+            for (int x = 0; x < width; x++) {
+                int nextX = Math.min(nextWidth - 1, x >> 1);
+                int rgb = row[x];
+                sums[nextX * 4] += (rgb >> 16) & 0xFF;
+                sums[nextX * 4 + 1] += (rgb >> 8) & 0xFF;
+                sums[nextX * 4 + 2] += rgb & 0xFF;
+                sums[nextX * 4 + 3]++;
+            }
+            if (y % 2 == 1 || y == height - 1) {
+                for (int x = 0; x < nextWidth; x++) {
+                    int count = Math.max(1, sums[x * 4 + 3]);
+                    nextRow[x] = (sums[x * 4] / count) << 16 | (sums[x * 4 + 1] / count) << 8
+                            | (sums[x * 4 + 2] / count);
+                }
+                Arrays.fill(sums, 0);
+                next.addRow(nextRow);
+            }
+        }
+
+        private void writeBand() throws IOException {
+            int bandY = (y - 1) / TILE_SIZE * TILE_SIZE;
+            int rows = y - bandY;
+            int tilesX = tileCount(width, 0);
+            for (int tileX = 0; tileX < tilesX; tileX++) {
+                tile.clear();
+                IntBuffer texels = tile.asIntBuffer();
+                int columns = Math.min(TILE_SIZE, width - tileX * TILE_SIZE);
+                for (int row = 0; row < rows; row++) {
+                    texels.put(row * TILE_SIZE, band, row * width + tileX * TILE_SIZE, columns);
+                }
+                long position = levelOffset + ((long) (bandY / TILE_SIZE) * tilesX + tileX) * TILE_BYTES;
+                while (tile.hasRemaining()) {
+                    channel.write(tile, position + tile.position());
+                }
+            }
+        }
+    }
+}
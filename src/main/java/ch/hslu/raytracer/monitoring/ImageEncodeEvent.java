@@ -0,0 +1,25 @@
+package ch.hslu.raytracer.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for encoding and writing a rendered image.
+ */
+@Name("ch.hslu.raytracer.ImageEncode")
+@Label("Image Encode")
+@Category("Raytracer")
+@Description("Encoding and writing a rendered image")
+public class ImageEncodeEvent extends Event {
+    @Label("Format")
+    public String format;
+    @Label("File")
+    public String file;
+    @Label("Width")
+    public int width;
+    @Label("Height")
+    public int height;
+}
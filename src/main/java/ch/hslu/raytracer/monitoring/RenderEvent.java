@@ -0,0 +1,33 @@
+package ch.hslu.raytracer.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event spanning a whole render, from submission until the image is complete.
+ */
+@Name("ch.hslu.raytracer.Render")
+@Label("Render")
+@Category("Raytracer")
+@Description("A render from submission until its image is complete")
+public class RenderEvent extends Event {
+    @Label("Width")
+    public int width;
+    @Label("Height")
+    public int height;
+    @Label("Region")
+    public String region;
+    @Label("Max Reflection Depth")
+    public int maxReflectionDepth;
+    @Label("Rays")
+    public long rays;
+    @Label("Tiles")
+    public int tiles;
+    @Label("Budget Exhausted")
+    public boolean budgetExhausted;
+    @Label("Cancelled")
+    public boolean cancelled;
+}
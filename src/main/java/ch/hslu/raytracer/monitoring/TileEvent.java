@@ -0,0 +1,28 @@
+package ch.hslu.raytracer.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for a single rendered tile.
+ */
+@Name("ch.hslu.raytracer.Tile")
+@Label("Render Tile")
+@Category("Raytracer")
+@Description("A tile of a render traced by a worker")
+public class TileEvent extends Event {
+    @Label("X")
+    public int x;
+    @Label("Y")
+    public int y;
+    @Label("Width")
+    public int width;
+    @Label("Block Size")
+    @Description("Edge length of the pixel blocks traced with one ray, 1 for the full pass")
+    public int blockSize;
+    @Label("Rays")
+    public long rays;
+}
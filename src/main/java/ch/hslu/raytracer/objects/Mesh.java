@@ -0,0 +1,185 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.Bounds;
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A triangle mesh with automatic levels of detail.
+ * <p>
+ * When the mesh is created, simplified versions are generated by vertex clustering on grids of growing
+ * cell size, together with a sphere proxy. Each level knows how far it may deviate from the full mesh,
+ * and a ray intersects the coarsest level whose error stays below the ray's footprint at the mesh, so a
+ * distant mesh covering a few pixels is tested against a handful of triangles, or a single sphere once it
+ * fits into a pixel. Reflection rays accept a larger error, their result is blended into the surface
+ * they start from and seen second hand. Shadow and reflection rays starting on the mesh itself always
+ * see it at the level of the hit they start from.
+ */
+public class Mesh extends Object3D {
+    private static final double REFLECTION_ERROR_SCALE = 4; // Error accepted by reflection rays, in footprints
+    private static final int FINEST_GRID = 64;              // Cells along the mesh diameter of the finest simplification
+    private static final double MIN_REDUCTION = 0.5;        // A level keeps at most this fraction of the finer level's triangles
+
+    private final List<Level> levels; // Finest first, the first one is the full mesh
+    private final Sphere proxy;       // Stands in for the whole mesh once it is smaller than the footprint
+    private final Vector center;      // Bounding sphere, used to reject rays and to pick the level
+    private final double radius;
+    private final Bounds bounds;
+
+    /**
+     * Creates a mesh and generates its levels of detail.
+     *
+     * @param triangles The triangles of the mesh, the first one's material is used for the proxy
+     * @throws IllegalArgumentException If there are no triangles
+     */
+    public Mesh(List<Triangle> triangles) {
+        super(firstMaterial(triangles));
+        List<Vector> vertices = new ArrayList<>(triangles.size() * 3);
+        double area = 0;
+        for (Triangle triangle : triangles) {
+            vertices.add(triangle.getV0());
+            vertices.add(triangle.getV1());
+            vertices.add(triangle.getV2());
+            Vector cross = triangle.getV1().subtract(triangle.getV0()).cross(triangle.getV2().subtract(triangle.getV0()));
+            area += Math.sqrt(cross.dot(cross)) / 2;
+        }
+        this.bounds = Bounds.of(vertices.toArray(new Vector[0]));
+        this.center = bounds.min().add(bounds.max()).scale(0.5);
+        double maxDistanceSquared = 0;
+        for (Vector vertex : vertices) {
+            Vector offset = vertex.subtract(center);
+            maxDistanceSquared = Math.max(maxDistanceSquared, offset.dot(offset));
+        }
+        this.radius = Math.sqrt(maxDistanceSquared);
+
+        this.levels = createLevels(triangles);
+
+        // The proxy covers the mean projected area of a convex mesh, which is a quarter of its surface area
+        double proxyRadius = Math.min(radius, Math.sqrt(area / (4 * Math.PI)));
+        this.proxy = new Sphere(center, proxyRadius, material);
+    }
+
+    /**
+     * Creates a mesh from the triangles of a cube, the cube then gets a level of detail.
+     */
+    public Mesh(RotatedCube cube) {
+        this(cube.getTriangles());
+    }
+
+    private static Material firstMaterial(List<Triangle> triangles) {
+        if (triangles.isEmpty()) {
+            throw new IllegalArgumentException("A mesh needs at least one triangle");
+        }
+        return triangles.get(0).getMaterial();
+    }
+
+    private List<Level> createLevels(List<Triangle> triangles) {
+        List<Level> result = new ArrayList<>();
+        result.add(new Level(List.copyOf(triangles), 0));
+
+        for (double cellSize = 2 * radius / FINEST_GRID; cellSize < 2 * radius; cellSize *= 2) {
+            List<Triangle> finer = result.get(result.size() - 1).triangles();
+            List<Triangle> simplified = MeshSimplifier.simplify(triangles, bounds, cellSize);
+            if (simplified.isEmpty()) {
+                break;
+            }
+            if (simplified.size() <= finer.size() * MIN_REDUCTION) {
+                // Every vertex stays within the cell it was merged in
+                result.add(new Level(simplified, cellSize * Math.sqrt(3)));
+            }
+        }
+        return List.copyOf(result);
+    }
+
+    /**
+     * Gets the number of levels, counting the full mesh but not the proxy. Hits on the proxy report
+     * this number as their level.
+     */
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    /**
+     * Gets the number of triangles of a level.
+     *
+     * @param level The level, 0 is the full mesh
+     */
+    public int getTriangleCount(int level) {
+        return levels.get(level).triangles().size();
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public HitInfo intersect(Ray ray) {
+        // Reject rays missing the bounding sphere
+        Vector toCenter = center.subtract(ray.origin());
+        double along = toCenter.dot(ray.direction());
+        double centerDistanceSquared = toCenter.dot(toCenter);
+        double radiusSquared = radius * radius;
+        if (centerDistanceSquared - along * along > radiusSquared
+                || (along < 0 && centerDistanceSquared > radiusSquared)) {
+            return null;
+        }
+
+        // Rays leaving the mesh see it at the level they were spawned on, a coarser one could cover their origin
+        int index = ray.source() == this ? ray.sourceLevel() : selectLevel(ray, centerDistanceSquared);
+        if (index == levels.size()) {
+            return wrap(proxy.intersect(ray), index);
+        }
+
+        HitInfo closestHit = null;
+        double closestDistance = Double.MAX_VALUE;
+        for (Triangle triangle : levels.get(index).triangles()) {
+            HitInfo hit = triangle.intersect(ray);
+            if (hit != null && hit.getDistance() < closestDistance) {
+                closestHit = hit;
+                closestDistance = hit.getDistance();
+            }
+        }
+        return wrap(closestHit, index);
+    }
+
+    /**
+     * Picks the level by the footprint where the ray reaches the bounding sphere.
+     *
+     * @return The index of the coarsest level within the ray's tolerance, the number of levels for the proxy
+     */
+    private int selectLevel(Ray ray, double centerDistanceSquared) {
+        double distance = Math.max(0, Math.sqrt(centerDistanceSquared) - radius);
+        double tolerance = ray.footprintAt(distance) * (ray.depth() > 0 ? REFLECTION_ERROR_SCALE : 1);
+        if (tolerance >= 2 * radius) {
+            return levels.size();
+        }
+
+        // The levels are ordered by growing error
+        int index = 0;
+        while (index + 1 < levels.size() && levels.get(index + 1).error() <= tolerance) {
+            index++;
+        }
+        return index;
+    }
+
+    // Reports the mesh as the hit object, keeping the material of the primitive that was hit
+    private HitInfo wrap(HitInfo hit, int level) {
+        if (hit == null) {
+            return null;
+        }
+        return new HitInfo(this, hit.getMaterial(), hit.getHitPoint(), hit.getNormal(), hit.getDistance(),
+                hit.getU(), hit.getV(), hit.getUvScale(), level);
+    }
+
+    /**
+     * The triangles of one level and how far they may deviate from the full mesh.
+     */
+    private record Level(List<Triangle> triangles, double error) {
+    }
+}
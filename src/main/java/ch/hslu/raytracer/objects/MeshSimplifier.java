@@ -0,0 +1,88 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.Bounds;
+import ch.hslu.raytracer.core.Vector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simplifies triangle meshes by vertex clustering: the bounds of the mesh are split into a grid of cubic
+ * cells, all vertices in a cell are merged into their mean, and triangles whose corners end up in fewer
+ * than three cells disappear. No vertex moves further than the diagonal of a cell.
+ */
+final class MeshSimplifier {
+    private static final int AXIS_BITS = 21; // Cell coordinates packed into one long key per cell
+
+    private MeshSimplifier() {
+    }
+
+    /**
+     * Simplifies a mesh on a grid of the given cell size.
+     *
+     * @param triangles The triangles of the mesh
+     * @param bounds The bounds of the mesh, the grid starts at their minimum
+     * @param cellSize The edge length of a grid cell
+     * @return The remaining triangles, each keeping the material and texture coordinates of its original
+     */
+    static List<Triangle> simplify(List<Triangle> triangles, Bounds bounds, double cellSize) {
+        // Merge every vertex into the mean of the vertices sharing its cell
+        Map<Long, double[]> cells = new HashMap<>(); // Sum of x, y, z and the vertex count per cell
+        for (Triangle triangle : triangles) {
+            for (Vector vertex : corners(triangle)) {
+                double[] sum = cells.computeIfAbsent(cellOf(vertex, bounds, cellSize), key -> new double[4]);
+                sum[0] += vertex.x();
+                sum[1] += vertex.y();
+                sum[2] += vertex.z();
+                sum[3]++;
+            }
+        }
+        Map<Long, Vector> representatives = new HashMap<>(cells.size() * 2);
+        cells.forEach((cell, sum) -> representatives.put(cell, new Vector(sum[0] / sum[3], sum[1] / sum[3], sum[2] / sum[3])));
+
+        List<Triangle> result = new ArrayList<>();
+        Set<List<Long>> kept = new HashSet<>();
+        for (Triangle triangle : triangles) {
+            Vector[] corners = corners(triangle);
+            long c0 = cellOf(corners[0], bounds, cellSize);
+            long c1 = cellOf(corners[1], bounds, cellSize);
+            long c2 = cellOf(corners[2], bounds, cellSize);
+
+            // Collapsed triangles and duplicates of triangles already kept are dropped
+            if (c0 == c1 || c1 == c2 || c0 == c2 || !kept.add(sortedCells(c0, c1, c2))) {
+                continue;
+            }
+            Vector v0 = representatives.get(c0);
+            Vector v1 = representatives.get(c1);
+            Vector v2 = representatives.get(c2);
+            Vector cross = v1.subtract(v0).cross(v2.subtract(v0));
+            if (cross.dot(cross) == 0) {
+                continue;
+            }
+            result.add(new Triangle(v0, v1, v2, triangle.getT0(), triangle.getT1(), triangle.getT2(),
+                    triangle.getMaterial()));
+        }
+        return result;
+    }
+
+    private static Vector[] corners(Triangle triangle) {
+        return new Vector[]{triangle.getV0(), triangle.getV1(), triangle.getV2()};
+    }
+
+    private static long cellOf(Vector vertex, Bounds bounds, double cellSize) {
+        long x = (long) ((vertex.x() - bounds.min().x()) / cellSize);
+        long y = (long) ((vertex.y() - bounds.min().y()) / cellSize);
+        long z = (long) ((vertex.z() - bounds.min().z()) / cellSize);
+        return (x << (2 * AXIS_BITS)) | (y << AXIS_BITS) | z;
+    }
+
+    private static List<Long> sortedCells(long c0, long c1, long c2) {
+        long min = Math.min(c0, Math.min(c1, c2));
+        long max = Math.max(c0, Math.max(c1, c2));
+        return List.of(min, c0 + c1 + c2 - min - max, max);
+    }
+}
@@ -1,5 +1,6 @@
 package ch.hslu.raytracer.objects;
 
+import ch.hslu.raytracer.core.Bounds;
 import ch.hslu.raytracer.core.HitInfo;
 import ch.hslu.raytracer.core.Ray;
 import ch.hslu.raytracer.materials.Material;
@@ -28,4 +29,13 @@ public abstract class Object3D {
         return material;
     }
 
+    /**
+     * Gets a box enclosing this object, used to skip the object where it can't be hit.
+     *
+     * @return The bounds of the object, or null if the object is unbounded
+     */
+    public Bounds getBounds() {
+        return null;
+    }
+
 }
\ No newline at end of file
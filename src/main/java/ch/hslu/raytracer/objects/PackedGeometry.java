@@ -0,0 +1,608 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.Bounds;
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores a large number of spheres and triangles off-heap as one object of the scene.
+ * <p>
+ * Every coordinate is kept in its own direct buffer (structure of arrays) together with an index
+ * into a small material table, so the heap only holds a handful of buffers no matter how many
+ * primitives there are. The intersection kernels read the buffers directly without creating objects.
+ * Primitives are grouped into chunks in insertion order, and a chunk is skipped when the ray misses
+ * its bounds, so spatially coherent insertion orders intersect fastest.
+ */
+public class PackedGeometry extends Object3D {
+    private static final int CHUNK_SIZE = 1024;
+    private static final double EPSILON = 0.0001;
+    private static final int IO_BUFFER_BYTES = 64 * 1024; // Staging buffer for writing columns, a multiple of eight
+
+    private final List<Material> materials;
+
+    private final int sphereCount;
+    private final DoubleBuffer sphereX, sphereY, sphereZ, sphereRadius;
+    private final IntBuffer sphereMaterial;
+    private final double[] sphereChunkBounds; // Six values per chunk: min x, y, z and max x, y, z
+
+    private final int triangleCount;
+    private final DoubleBuffer[] triangleVertices; // Nine buffers: x, y, z of the first, second and third vertex
+    private final IntBuffer triangleMaterial;
+    private final double[] triangleChunkBounds;
+
+    private final Bounds bounds;
+
+    private PackedGeometry(List<Material> materials,
+                           int sphereCount, DoubleBuffer[] sphereColumns, IntBuffer sphereMaterial,
+                           double[] sphereChunkBounds,
+                           int triangleCount, DoubleBuffer[] triangleVertices, IntBuffer triangleMaterial,
+                           double[] triangleChunkBounds) {
+        // The per-primitive material is reported through the hits, the first one stands for the object
+        super(materials.isEmpty() ? null : materials.get(0));
+        this.materials = List.copyOf(materials);
+
+        this.sphereCount = sphereCount;
+        this.sphereX = sphereColumns[0];
+        this.sphereY = sphereColumns[1];
+        this.sphereZ = sphereColumns[2];
+        this.sphereRadius = sphereColumns[3];
+        this.sphereMaterial = sphereMaterial;
+        this.sphereChunkBounds = sphereChunkBounds;
+
+        this.triangleCount = triangleCount;
+        this.triangleVertices = triangleVertices;
+        this.triangleMaterial = triangleMaterial;
+        this.triangleChunkBounds = triangleChunkBounds;
+
+        this.bounds = computeBounds();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getSphereCount() {
+        return sphereCount;
+    }
+
+    public int getTriangleCount() {
+        return triangleCount;
+    }
+
+    /**
+     * Gets the number of bytes held off-heap by the primitive buffers.
+     */
+    public long getOffHeapBytes() {
+        return (long) sphereCount * (4 * Double.BYTES + Integer.BYTES)
+                + (long) triangleCount * (9 * Double.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Gets the material table the material indices of the primitives refer to.
+     */
+    public List<Material> getMaterials() {
+        return materials;
+    }
+
+    /**
+     * Gets the number of bytes {@link #write} produces, always a multiple of eight.
+     */
+    public long getSerializedSize() {
+        return 2 * Integer.BYTES
+                + 4L * sphereCount * Double.BYTES + align((long) sphereCount * Integer.BYTES)
+                + 9L * triangleCount * Double.BYTES + align((long) triangleCount * Integer.BYTES)
+                + (long) (sphereChunkBounds.length + triangleChunkBounds.length) * Double.BYTES;
+    }
+
+    /**
+     * Writes the primitive buffers and the chunk bounds in the given byte order, so {@link #map}
+     * can use them in place. Materials are written as their index into {@link #getMaterials()}.
+     *
+     * @param channel The channel to write to, starting at its position, which is advanced past the data
+     * @param order The byte order to write in
+     * @throws IOException If the channel can't be written
+     */
+    public void write(FileChannel channel, ByteOrder order) throws IOException {
+        ByteBuffer counts = ByteBuffer.allocate(2 * Integer.BYTES).order(order);
+        counts.putInt(sphereCount).putInt(triangleCount).flip();
+        writeFully(channel, counts);
+        for (DoubleBuffer column : new DoubleBuffer[]{sphereX, sphereY, sphereZ, sphereRadius}) {
+            writeDoubles(channel, order, column, sphereCount);
+        }
+        writeInts(channel, order, sphereMaterial, sphereCount);
+        for (DoubleBuffer column : triangleVertices) {
+            writeDoubles(channel, order, column, triangleCount);
+        }
+        writeInts(channel, order, triangleMaterial, triangleCount);
+        writeDoubles(channel, order, DoubleBuffer.wrap(sphereChunkBounds), sphereChunkBounds.length);
+        writeDoubles(channel, order, DoubleBuffer.wrap(triangleChunkBounds), triangleChunkBounds.length);
+    }
+
+    /**
+     * Creates a packed geometry directly on data written by {@link #write}. Every primitive buffer is
+     * a memory mapping of its own column of the file, so neither the file nor a section is limited to
+     * the 2GB of a single mapping. Only the chunk bounds are copied to the heap.
+     *
+     * @param channel The channel to map from, starting at its position, which is advanced past the data
+     * @param order The byte order the data was written in
+     * @param materials The material table the data was written with
+     * @return The packed geometry
+     * @throws IOException If the channel can't be read or a column is larger than a mapping can hold
+     */
+    public static PackedGeometry map(FileChannel channel, ByteOrder order, List<Material> materials)
+            throws IOException {
+        ByteBuffer counts = readFully(channel, 2 * Integer.BYTES, order);
+        int sphereCount = counts.getInt();
+        int triangleCount = counts.getInt();
+        DoubleBuffer[] spheres = new DoubleBuffer[4];
+        for (int i = 0; i < spheres.length; i++) {
+            spheres[i] = mapColumn(channel, order, (long) sphereCount * Double.BYTES).asDoubleBuffer();
+        }
+        IntBuffer sphereMaterial = mapColumn(channel, order, align((long) sphereCount * Integer.BYTES))
+                .asIntBuffer().limit(sphereCount);
+        DoubleBuffer[] vertices = new DoubleBuffer[9];
+        for (int i = 0; i < vertices.length; i++) {
+            vertices[i] = mapColumn(channel, order, (long) triangleCount * Double.BYTES).asDoubleBuffer();
+        }
+        IntBuffer triangleMaterial = mapColumn(channel, order, align((long) triangleCount * Integer.BYTES))
+                .asIntBuffer().limit(triangleCount);
+
+        double[] sphereChunkBounds = new double[chunkCount(sphereCount) * 6];
+        readFully(channel, sphereChunkBounds.length * Double.BYTES, order).asDoubleBuffer().get(sphereChunkBounds);
+        double[] triangleChunkBounds = new double[chunkCount(triangleCount) * 6];
+        readFully(channel, triangleChunkBounds.length * Double.BYTES, order).asDoubleBuffer().get(triangleChunkBounds);
+
+        return new PackedGeometry(materials, sphereCount, spheres, sphereMaterial, sphereChunkBounds,
+                triangleCount, vertices, triangleMaterial, triangleChunkBounds);
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public HitInfo intersect(Ray ray) {
+        double ox = ray.origin().x(), oy = ray.origin().y(), oz = ray.origin().z();
+        double dx = ray.direction().x(), dy = ray.direction().y(), dz = ray.direction().z();
+        // A huge inverse instead of infinity keeps axis-parallel rays starting on a chunk's bounds free of NaN
+        double invX = dx != 0 ? 1 / dx : Double.MAX_VALUE;
+        double invY = dy != 0 ? 1 / dy : Double.MAX_VALUE;
+        double invZ = dz != 0 ? 1 / dz : Double.MAX_VALUE;
+
+        double closest = Double.MAX_VALUE;
+        int closestSphere = -1;
+        int closestTriangle = -1;
+        double closestU = 0, closestV = 0;
+
+        for (int chunk = 0, start = 0; start < sphereCount; chunk++, start += CHUNK_SIZE) {
+            if (!hitsChunk(sphereChunkBounds, chunk, ox, oy, oz, invX, invY, invZ, closest)) {
+                continue;
+            }
+            int end = Math.min(start + CHUNK_SIZE, sphereCount);
+            for (int i = start; i < end; i++) {
+                double ocx = ox - sphereX.get(i);
+                double ocy = oy - sphereY.get(i);
+                double ocz = oz - sphereZ.get(i);
+                double r = sphereRadius.get(i);
+
+                // The direction is normalized, so the quadratic reduces to t^2 + 2bt + c
+                double b = ocx * dx + ocy * dy + ocz * dz;
+                double c = ocx * ocx + ocy * ocy + ocz * ocz - r * r;
+                double discriminant = b * b - c;
+                if (discriminant < 0) {
+                    continue;
+                }
+                double root = Math.sqrt(discriminant);
+                double t = -b - root;
+                if (t <= EPSILON) {
+                    t = -b + root;
+                }
+                if (t > EPSILON && t < closest) {
+                    closest = t;
+                    closestSphere = i;
+                }
+            }
+        }
+
+        DoubleBuffer[] v = triangleVertices;
+        for (int chunk = 0, start = 0; start < triangleCount; chunk++, start += CHUNK_SIZE) {
+            if (!hitsChunk(triangleChunkBounds, chunk, ox, oy, oz, invX, invY, invZ, closest)) {
+                continue;
+            }
+            int end = Math.min(start + CHUNK_SIZE, triangleCount);
+            for (int i = start; i < end; i++) {
+                // Möller–Trumbore on the raw coordinates
+                double x0 = v[0].get(i), y0 = v[1].get(i), z0 = v[2].get(i);
+                double e1x = v[3].get(i) - x0, e1y = v[4].get(i) - y0, e1z = v[5].get(i) - z0;
+                double e2x = v[6].get(i) - x0, e2y = v[7].get(i) - y0, e2z = v[8].get(i) - z0;
+
+                double hx = dy * e2z - dz * e2y;
+                double hy = dz * e2x - dx * e2z;
+                double hz = dx * e2y - dy * e2x;
+                double a = e1x * hx + e1y * hy + e1z * hz;
+                if (Math.abs(a) < EPSILON) {
+                    continue;
+                }
+
+                double f = 1.0 / a;
+                double sx = ox - x0, sy = oy - y0, sz = oz - z0;
+                double u = f * (sx * hx + sy * hy + sz * hz);
+                if (u < 0.0 || u > 1.0) {
+                    continue;
+                }
+
+                double qx = sy * e1z - sz * e1y;
+                double qy = sz * e1x - sx * e1z;
+                double qz = sx * e1y - sy * e1x;
+                double w = f * (dx * qx + dy * qy + dz * qz);
+                if (w < 0.0 || u + w > 1.0) {
+                    continue;
+                }
+
+                double t = f * (e2x * qx + e2y * qy + e2z * qz);
+                if (t > EPSILON && t < closest) {
+                    closest = t;
+                    closestTriangle = i;
+                    closestSphere = -1;
+                    closestU = u;
+                    closestV = w;
+                }
+            }
+        }
+
+        if (closestTriangle >= 0) {
+            return triangleHit(ray, closestTriangle, closest, closestU, closestV);
+        }
+        if (closestSphere >= 0) {
+            return sphereHit(ray, closestSphere, closest);
+        }
+        return null;
+    }
+
+    private HitInfo sphereHit(Ray ray, int i, double t) {
+        Vector hitPoint = ray.origin().add(ray.direction().scale(t));
+        Vector normal = hitPoint.subtract(new Vector(sphereX.get(i), sphereY.get(i), sphereZ.get(i))).normalize();
+        Material material = materials.get(sphereMaterial.get(i));
+
+        // Same spherical mapping as Sphere
+        double u = 0.5 + Math.atan2(normal.z(), normal.x()) / (2 * Math.PI);
+        double v = 0.5 - Math.asin(normal.y()) / Math.PI;
+        return new HitInfo(this, material, hitPoint, normal, t, u, v, 1.0 / (2 * Math.PI * sphereRadius.get(i)));
+    }
+
+    private HitInfo triangleHit(Ray ray, int i, double t, double u, double v) {
+        DoubleBuffer[] c = triangleVertices;
+        Vector v0 = new Vector(c[0].get(i), c[1].get(i), c[2].get(i));
+        Vector edge1 = new Vector(c[3].get(i), c[4].get(i), c[5].get(i)).subtract(v0);
+        Vector edge2 = new Vector(c[6].get(i), c[7].get(i), c[8].get(i)).subtract(v0);
+        Vector cross = edge1.cross(edge2);
+        Vector normal = cross.normalize();
+
+        // Ensure normal faces the right way (opposite to the incoming ray)
+        if (normal.dot(ray.direction()) > 0) {
+            normal = normal.scale(-1);
+        }
+
+        Vector hitPoint = ray.origin().add(ray.direction().scale(t));
+        Material material = materials.get(triangleMaterial.get(i));
+
+        // Same default texture coordinates as Triangle, (0, 0), (1, 0) and (0, 1)
+        double uvScale = Math.sqrt(1 / Math.sqrt(cross.dot(cross)));
+        return new HitInfo(this, material, hitPoint, normal, t, u, v, uvScale);
+    }
+
+    /**
+     * Slab test of the ray against the bounds of a chunk, limited to hits closer than the current one.
+     */
+    private static boolean hitsChunk(double[] chunkBounds, int chunk, double ox, double oy, double oz,
+                                     double invX, double invY, double invZ, double closest) {
+        int base = chunk * 6;
+        double t1 = (chunkBounds[base] - ox) * invX, t2 = (chunkBounds[base + 3] - ox) * invX;
+        double tMin = Math.min(t1, t2), tMax = Math.max(t1, t2);
+        t1 = (chunkBounds[base + 1] - oy) * invY;
+        t2 = (chunkBounds[base + 4] - oy) * invY;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        t1 = (chunkBounds[base + 2] - oz) * invZ;
+        t2 = (chunkBounds[base + 5] - oz) * invZ;
+        tMin = Math.max(tMin, Math.min(t1, t2));
+        tMax = Math.min(tMax, Math.max(t1, t2));
+        return tMax >= Math.max(tMin, 0) && tMin < closest;
+    }
+
+    private static double[] computeSphereChunkBounds(int sphereCount, DoubleBuffer[] sphereColumns) {
+        double[] result = emptyChunkBounds(chunkCount(sphereCount));
+        for (int i = 0; i < sphereCount; i++) {
+            double x = sphereColumns[0].get(i), y = sphereColumns[1].get(i), z = sphereColumns[2].get(i);
+            double r = sphereColumns[3].get(i);
+            include(result, i / CHUNK_SIZE, x - r, y - r, z - r);
+            include(result, i / CHUNK_SIZE, x + r, y + r, z + r);
+        }
+        return result;
+    }
+
+    private static double[] computeTriangleChunkBounds(int triangleCount, DoubleBuffer[] triangleVertices) {
+        double[] result = emptyChunkBounds(chunkCount(triangleCount));
+        for (int i = 0; i < triangleCount; i++) {
+            for (int vertex = 0; vertex < 3; vertex++) {
+                include(result, i / CHUNK_SIZE, triangleVertices[vertex * 3].get(i),
+                        triangleVertices[vertex * 3 + 1].get(i), triangleVertices[vertex * 3 + 2].get(i));
+            }
+        }
+        return result;
+    }
+
+    private Bounds computeBounds() {
+        double[] all = emptyChunkBounds(1);
+        for (double[] chunkBounds : new double[][]{sphereChunkBounds, triangleChunkBounds}) {
+            for (int base = 0; base < chunkBounds.length; base += 6) {
+                include(all, 0, chunkBounds[base], chunkBounds[base + 1], chunkBounds[base + 2]);
+                include(all, 0, chunkBounds[base + 3], chunkBounds[base + 4], chunkBounds[base + 5]);
+            }
+        }
+        if (sphereCount + triangleCount == 0) {
+            return null;
+        }
+        return new Bounds(new Vector(all[0], all[1], all[2]), new Vector(all[3], all[4], all[5]));
+    }
+
+    private static int chunkCount(int count) {
+        return (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    // Int columns are padded so the following double columns stay aligned
+    private static long align(long bytes) {
+        return (bytes + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+
+    private static void writeDoubles(FileChannel channel, ByteOrder order, DoubleBuffer values, int count)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(order);
+        DoubleBuffer source = values.duplicate().clear().limit(count);
+        while (source.hasRemaining()) {
+            int n = Math.min(source.remaining(), IO_BUFFER_BYTES / Double.BYTES);
+            buffer.clear();
+            buffer.asDoubleBuffer().put(source.slice().limit(n));
+            source.position(source.position() + n);
+            buffer.limit(n * Double.BYTES);
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteOrder order, IntBuffer values, int count)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_BYTES).order(order);
+        IntBuffer source = values.duplicate().clear().limit(count);
+        while (source.hasRemaining()) {
+            int n = Math.min(source.remaining(), IO_BUFFER_BYTES / Integer.BYTES);
+            buffer.clear();
+            buffer.asIntBuffer().put(source.slice().limit(n));
+            source.position(source.position() + n);
+            buffer.limit(n * Integer.BYTES);
+            writeFully(channel, buffer);
+        }
+        int padding = (int) (align((long) count * Integer.BYTES) - (long) count * Integer.BYTES);
+        writeFully(channel, ByteBuffer.allocate(padding));
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(FileChannel channel, int bytes, ByteOrder order) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(order);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Packed geometry is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static ByteBuffer mapColumn(FileChannel channel, ByteOrder order, long bytes) throws IOException {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IOException("Packed geometry column is too large to map: " + bytes + " bytes");
+        }
+        long position = channel.position();
+        if (position + bytes > channel.size()) {
+            throw new EOFException("Packed geometry is truncated");
+        }
+        // The mapping stays valid after the channel is closed
+        ByteBuffer column = channel.map(FileChannel.MapMode.READ_ONLY, position, bytes).order(order);
+        channel.position(position + bytes);
+        return column;
+    }
+
+    private static double[] emptyChunkBounds(int chunks) {
+        double[] result = new double[chunks * 6];
+        for (int base = 0; base < result.length; base += 6) {
+            result[base] = result[base + 1] = result[base + 2] = Double.MAX_VALUE;
+            result[base + 3] = result[base + 4] = result[base + 5] = -Double.MAX_VALUE;
+        }
+        return result;
+    }
+
+    private static void include(double[] chunkBounds, int chunk, double x, double y, double z) {
+        int base = chunk * 6;
+        chunkBounds[base] = Math.min(chunkBounds[base], x);
+        chunkBounds[base + 1] = Math.min(chunkBounds[base + 1], y);
+        chunkBounds[base + 2] = Math.min(chunkBounds[base + 2], z);
+        chunkBounds[base + 3] = Math.max(chunkBounds[base + 3], x);
+        chunkBounds[base + 4] = Math.max(chunkBounds[base + 4], y);
+        chunkBounds[base + 5] = Math.max(chunkBounds[base + 5], z);
+    }
+
+    /**
+     * Collects primitives into growing off-heap buffers.
+     */
+    public static class Builder {
+        private final List<Material> materials = new ArrayList<>();
+        private final Map<Material, Integer> materialIndices = new IdentityHashMap<>(); // Materials of added objects
+
+        private int sphereCount;
+        private final Column sphereX = new Column(), sphereY = new Column(), sphereZ = new Column();
+        private final Column sphereRadius = new Column();
+        private final IndexColumn sphereMaterial = new IndexColumn();
+
+        private int triangleCount;
+        private final Column[] triangleVertices = new Column[9];
+        private final IndexColumn triangleMaterial = new IndexColumn();
+
+        private Builder() {
+            for (int i = 0; i < 9; i++) {
+                triangleVertices[i] = new Column();
+            }
+        }
+
+        /**
+         * Adds a material to the material table.
+         *
+         * @return The index to reference the material with
+         */
+        public int addMaterial(Material material) {
+            materials.add(material);
+            return materials.size() - 1;
+        }
+
+        public Builder addSphere(Vector center, double radius, int materialIndex) {
+            checkMaterial(materialIndex);
+            sphereX.add(sphereCount, center.x());
+            sphereY.add(sphereCount, center.y());
+            sphereZ.add(sphereCount, center.z());
+            sphereRadius.add(sphereCount, radius);
+            sphereMaterial.add(sphereCount, materialIndex);
+            sphereCount++;
+            return this;
+        }
+
+        public Builder addTriangle(Vector v0, Vector v1, Vector v2, int materialIndex) {
+            checkMaterial(materialIndex);
+            Vector[] vertices = {v0, v1, v2};
+            for (int vertex = 0; vertex < 3; vertex++) {
+                triangleVertices[vertex * 3].add(triangleCount, vertices[vertex].x());
+                triangleVertices[vertex * 3 + 1].add(triangleCount, vertices[vertex].y());
+                triangleVertices[vertex * 3 + 2].add(triangleCount, vertices[vertex].z());
+            }
+            triangleMaterial.add(triangleCount, materialIndex);
+            triangleCount++;
+            return this;
+        }
+
+        /**
+         * Adds the primitives of a sphere, triangle or rotated cube, sharing one material table entry
+         * per material. Packed triangles always use the default texture coordinates.
+         *
+         * @throws IllegalArgumentException If the object isn't one of these types
+         */
+        public Builder addObject(Object3D object) {
+            if (object instanceof Sphere sphere) {
+                addSphere(sphere.getCenter(), sphere.getRadius(), materialIndex(sphere.getMaterial()));
+            } else if (object instanceof Triangle triangle) {
+                addTriangle(triangle.getV0(), triangle.getV1(), triangle.getV2(), materialIndex(triangle.getMaterial()));
+            } else if (object instanceof RotatedCube cube) {
+                int materialIndex = materialIndex(cube.getMaterial());
+                for (Triangle triangle : cube.getTriangles()) {
+                    addTriangle(triangle.getV0(), triangle.getV1(), triangle.getV2(), materialIndex);
+                }
+            } else {
+                throw new IllegalArgumentException("Can't pack " + object.getClass().getSimpleName());
+            }
+            return this;
+        }
+
+        public PackedGeometry build() {
+            DoubleBuffer[] spheres = {
+                    sphereX.trim(sphereCount), sphereY.trim(sphereCount), sphereZ.trim(sphereCount),
+                    sphereRadius.trim(sphereCount)
+            };
+            DoubleBuffer[] vertices = new DoubleBuffer[9];
+            for (int i = 0; i < 9; i++) {
+                vertices[i] = triangleVertices[i].trim(triangleCount);
+            }
+            return new PackedGeometry(materials,
+                    sphereCount, spheres, sphereMaterial.trim(sphereCount),
+                    computeSphereChunkBounds(sphereCount, spheres),
+                    triangleCount, vertices, triangleMaterial.trim(triangleCount),
+                    computeTriangleChunkBounds(triangleCount, vertices));
+        }
+
+        private int materialIndex(Material material) {
+            return materialIndices.computeIfAbsent(material, this::addMaterial);
+        }
+
+        private void checkMaterial(int materialIndex) {
+            if (materialIndex < 0 || materialIndex >= materials.size()) {
+                throw new IllegalArgumentException("Unknown material index: " + materialIndex);
+            }
+        }
+    }
+
+    /**
+     * Direct buffer of doubles that doubles its capacity when full.
+     */
+    private static class Column {
+        private DoubleBuffer buffer = allocate(CHUNK_SIZE);
+
+        void add(int index, double value) {
+            if (index == buffer.capacity()) {
+                DoubleBuffer grown = allocate(buffer.capacity() * 2);
+                grown.put(buffer.clear());
+                buffer = grown;
+            }
+            buffer.put(index, value);
+        }
+
+        DoubleBuffer trim(int count) {
+            DoubleBuffer trimmed = allocate(Math.max(1, count));
+            trimmed.put(buffer.clear().limit(count));
+            return trimmed;
+        }
+
+        private static DoubleBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * Double.BYTES).order(ByteOrder.nativeOrder()).asDoubleBuffer();
+        }
+    }
+
+    /**
+     * Direct buffer of ints that doubles its capacity when full.
+     */
+    private static class IndexColumn {
+        private IntBuffer buffer = allocate(CHUNK_SIZE);
+
+        void add(int index, int value) {
+            if (index == buffer.capacity()) {
+                IntBuffer grown = allocate(buffer.capacity() * 2);
+                grown.put(buffer.clear());
+                buffer = grown;
+            }
+            buffer.put(index, value);
+        }
+
+        IntBuffer trim(int count) {
+            IntBuffer trimmed = allocate(Math.max(1, count));
+            trimmed.put(buffer.clear().limit(count));
+            return trimmed;
+        }
+
+        private static IntBuffer allocate(int capacity) {
+            return ByteBuffer.allocateDirect(capacity * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package ch.hslu.raytracer.objects;
 
+import ch.hslu.raytracer.core.Bounds;
 import ch.hslu.raytracer.core.HitInfo;
 import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.TexCoord;
 import ch.hslu.raytracer.core.Vector;
 import ch.hslu.raytracer.materials.Material;
 
@@ -9,6 +11,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class RotatedCube extends Object3D {
+    // Texture coordinates of the corners of a face, counter-clockwise from the bottom-left
+    private static final TexCoord[] FACE_UVS = {
+            new TexCoord(0, 1), new TexCoord(1, 1), new TexCoord(1, 0), new TexCoord(0, 0)
+    };
+
     private final Vector center;
     private final double size;
     private final double rotationX; // Rotation around X-axis in radians
@@ -53,33 +60,22 @@ public class RotatedCube extends Object3D {
             );
         }
 
-        // Front face
-        result.add(new Triangle(vertices[4], vertices[5], vertices[6], material));
-        result.add(new Triangle(vertices[4], vertices[6], vertices[7], material));
-
-        // Back face
-        result.add(new Triangle(vertices[1], vertices[0], vertices[3], material));
-        result.add(new Triangle(vertices[1], vertices[3], vertices[2], material));
-
-        // Left face
-        result.add(new Triangle(vertices[0], vertices[4], vertices[7], material));
-        result.add(new Triangle(vertices[0], vertices[7], vertices[3], material));
-
-        // Right face
-        result.add(new Triangle(vertices[5], vertices[1], vertices[2], material));
-        result.add(new Triangle(vertices[5], vertices[2], vertices[6], material));
-
-        // Top face
-        result.add(new Triangle(vertices[7], vertices[6], vertices[2], material));
-        result.add(new Triangle(vertices[7], vertices[2], vertices[3], material));
-
-        // Bottom face
-        result.add(new Triangle(vertices[0], vertices[1], vertices[5], material));
-        result.add(new Triangle(vertices[0], vertices[5], vertices[4], material));
+        // Each face is a quad split into two triangles, every face maps the full texture
+        addFace(result, vertices[4], vertices[5], vertices[6], vertices[7]); // Front face
+        addFace(result, vertices[1], vertices[0], vertices[3], vertices[2]); // Back face
+        addFace(result, vertices[0], vertices[4], vertices[7], vertices[3]); // Left face
+        addFace(result, vertices[5], vertices[1], vertices[2], vertices[6]); // Right face
+        addFace(result, vertices[7], vertices[6], vertices[2], vertices[3]); // Top face
+        addFace(result, vertices[0], vertices[1], vertices[5], vertices[4]); // Bottom face
 
         return result;
     }
 
+    private void addFace(List<Triangle> result, Vector a, Vector b, Vector c, Vector d) {
+        result.add(new Triangle(a, b, c, FACE_UVS[0], FACE_UVS[1], FACE_UVS[2], material));
+        result.add(new Triangle(a, c, d, FACE_UVS[0], FACE_UVS[2], FACE_UVS[3], material));
+    }
+
     private Vector rotateVertex(Vector v) {
         // Apply X rotation
         double y1 = v.y() * Math.cos(rotationX) - v.z() * Math.sin(rotationX);
@@ -96,6 +92,16 @@ public class RotatedCube extends Object3D {
         return new Vector(x3, y3, z2);
     }
 
+    public List<Triangle> getTriangles() {
+        return triangles;
+    }
+
+    @Override
+    public Bounds getBounds() {
+        // Any rotation of the cube stays within the sphere through its corners
+        return Bounds.ofSphere(center, size * Math.sqrt(3) / 2);
+    }
+
     @Override
     public HitInfo intersect(Ray ray) {
         HitInfo closestHit = null;
@@ -105,7 +111,8 @@ public class RotatedCube extends Object3D {
         for (Triangle triangle : triangles) {
             HitInfo hit = triangle.intersect(ray);
             if (hit != null && hit.getDistance() < closestDistance) {
-                closestHit = new HitInfo(this, hit.getHitPoint(), hit.getNormal(), hit.getDistance());
+                closestHit = new HitInfo(this, hit.getHitPoint(), hit.getNormal(), hit.getDistance(),
+                        hit.getU(), hit.getV(), hit.getUvScale());
                 closestDistance = hit.getDistance();
             }
         }
@@ -1,5 +1,6 @@
 package ch.hslu.raytracer.objects;
 
+import ch.hslu.raytracer.core.Bounds;
 import ch.hslu.raytracer.core.HitInfo;
 import ch.hslu.raytracer.core.Ray;
 import ch.hslu.raytracer.core.Vector;
@@ -16,6 +17,19 @@ public class Sphere extends Object3D {
         this.radius = radius;
     }
 
+    public Vector getCenter() {
+        return center;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return Bounds.ofSphere(center, radius);
+    }
+
     @Override
     public HitInfo intersect(Ray ray) {
         Vector oc = ray.origin().subtract(center);
@@ -43,6 +57,15 @@ public class Sphere extends Object3D {
         Vector hitPoint = ray.origin().add(ray.direction().scale(t));
         Vector normal = hitPoint.subtract(center).normalize();
 
-        return new HitInfo(this, hitPoint, normal, t);
+        // Texture coordinates are only needed for textured materials and are costly to compute
+        if (material.getTexture() == null) {
+            return new HitInfo(this, hitPoint, normal, t);
+        }
+
+        // Spherical mapping, u wraps around the equator and v runs from the top to the bottom pole
+        double u = 0.5 + Math.atan2(normal.z(), normal.x()) / (2 * Math.PI);
+        double v = 0.5 - Math.asin(normal.y()) / Math.PI;
+
+        return new HitInfo(this, hitPoint, normal, t, u, v, 1.0 / (2 * Math.PI * radius));
     }
 }
\ No newline at end of file
@@ -0,0 +1,379 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.Bounds;
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cloud of many small spheres, e.g. the particles of a simulation, as one object of the scene.
+ * <p>
+ * Centers and radii are kept in packed float arrays and every sphere refers to a material of a small
+ * shared palette, so a particle costs 17 bytes plus its grid references instead of several objects.
+ * The spheres are sorted into a uniform grid which rays walk cell by cell, front to back, and each
+ * cell is tested in one tight loop over its spheres. The walk stops at the first cell containing a hit.
+ */
+public class SphereCloud extends Object3D {
+    private static final int MAX_PALETTE_SIZE = 256;
+    private static final int MAX_RESOLUTION = 1024; // Cells along one axis
+    private static final double SPHERES_PER_CELL = 2;
+    private static final double EPSILON = 0.0001;
+
+    private final List<Material> palette;
+    private final int count;
+    private final float[] x, y, z, radius; // Sorted by the grid cell of the center
+    private final byte[] material;         // Palette index of every sphere
+
+    // Uniform grid, the spheres overlapping cell c are cellSpheres[cellStart[c]] to cellSpheres[cellStart[c + 1] - 1]
+    private final double minX, minY, minZ;
+    private final double maxX, maxY, maxZ;
+    private final double cellSize;
+    private final int resolutionX, resolutionY, resolutionZ;
+    private final int[] cellStart;
+    private final int[] cellSpheres;
+
+    private SphereCloud(Builder builder) {
+        super(builder.palette.isEmpty() ? null : builder.palette.get(0));
+        this.palette = List.copyOf(builder.palette);
+        this.count = builder.count;
+
+        // Bounds of all spheres including their radii
+        double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+        double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+        double radiusSum = 0;
+        for (int i = 0; i < count; i++) {
+            double r = builder.radius[i];
+            min[0] = Math.min(min[0], builder.x[i] - r);
+            min[1] = Math.min(min[1], builder.y[i] - r);
+            min[2] = Math.min(min[2], builder.z[i] - r);
+            max[0] = Math.max(max[0], builder.x[i] + r);
+            max[1] = Math.max(max[1], builder.y[i] + r);
+            max[2] = Math.max(max[2], builder.z[i] + r);
+            radiusSum += r;
+        }
+        if (count == 0) {
+            Arrays.fill(min, 0);
+            Arrays.fill(max, 0);
+        }
+        minX = min[0];
+        minY = min[1];
+        minZ = min[2];
+        maxX = max[0];
+        maxY = max[1];
+        maxZ = max[2];
+
+        // Aim for a few spheres per cell, but keep cells large enough that a sphere overlaps only a few of them
+        double extentX = Math.max(maxX - minX, 1e-9);
+        double extentY = Math.max(maxY - minY, 1e-9);
+        double extentZ = Math.max(maxZ - minZ, 1e-9);
+        double cells = Math.max(1, count / SPHERES_PER_CELL);
+        double meanRadius = count == 0 ? 0 : radiusSum / count;
+        double size = Math.max(Math.cbrt(extentX * extentY * extentZ / cells), 4 * meanRadius);
+        size = Math.max(size, Math.max(extentX, Math.max(extentY, extentZ)) / MAX_RESOLUTION);
+        cellSize = size;
+        resolutionX = resolution(extentX, size);
+        resolutionY = resolution(extentY, size);
+        resolutionZ = resolution(extentZ, size);
+
+        // Sort the spheres by the cell of their center, so the spheres of a cell are close in memory
+        int cellCount = resolutionX * resolutionY * resolutionZ;
+        int[] order = sortByCell(builder, cellCount);
+        x = new float[count];
+        y = new float[count];
+        z = new float[count];
+        radius = new float[count];
+        material = new byte[count];
+        for (int i = 0; i < count; i++) {
+            int source = order[i];
+            x[i] = builder.x[source];
+            y[i] = builder.y[source];
+            z[i] = builder.z[source];
+            radius[i] = builder.radius[source];
+            material[i] = builder.material[source];
+        }
+
+        // Reference every sphere from each cell it overlaps, counted first and then filled
+        cellStart = new int[cellCount + 1];
+        long references = 0;
+        for (int i = 0; i < count; i++) {
+            int[] range = cellRange(i);
+            for (int cz = range[2]; cz <= range[5]; cz++) {
+                for (int cy = range[1]; cy <= range[4]; cy++) {
+                    for (int cx = range[0]; cx <= range[3]; cx++) {
+                        cellStart[cellIndex(cx, cy, cz) + 1]++;
+                    }
+                }
+            }
+            references += (long) (range[3] - range[0] + 1) * (range[4] - range[1] + 1) * (range[5] - range[2] + 1);
+        }
+        if (references > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Too many sphere grid references: " + references);
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        cellSpheres = new int[(int) references];
+        int[] fill = Arrays.copyOf(cellStart, cellCount);
+        for (int i = 0; i < count; i++) {
+            int[] range = cellRange(i);
+            for (int cz = range[2]; cz <= range[5]; cz++) {
+                for (int cy = range[1]; cy <= range[4]; cy++) {
+                    for (int cx = range[0]; cx <= range[3]; cx++) {
+                        cellSpheres[fill[cellIndex(cx, cy, cz)]++] = i;
+                    }
+                }
+            }
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int getSphereCount() {
+        return count;
+    }
+
+    /**
+     * Gets the material palette the spheres refer to.
+     */
+    public List<Material> getPalette() {
+        return palette;
+    }
+
+    @Override
+    public Bounds getBounds() {
+        if (count == 0) {
+            return null;
+        }
+        return new Bounds(new Vector(minX, minY, minZ), new Vector(maxX, maxY, maxZ));
+    }
+
+    @Override
+    public HitInfo intersect(Ray ray) {
+        if (count == 0) {
+            return null;
+        }
+        double ox = ray.origin().x(), oy = ray.origin().y(), oz = ray.origin().z();
+        double dx = ray.direction().x(), dy = ray.direction().y(), dz = ray.direction().z();
+
+        // Clip the ray to the grid, a huge inverse instead of infinity keeps axis-parallel rays free of NaN
+        double invX = dx != 0 ? 1 / dx : Double.MAX_VALUE;
+        double invY = dy != 0 ? 1 / dy : Double.MAX_VALUE;
+        double invZ = dz != 0 ? 1 / dz : Double.MAX_VALUE;
+        double t1 = (minX - ox) * invX, t2 = (maxX - ox) * invX;
+        double tEnter = Math.min(t1, t2), tExit = Math.max(t1, t2);
+        t1 = (minY - oy) * invY;
+        t2 = (maxY - oy) * invY;
+        tEnter = Math.max(tEnter, Math.min(t1, t2));
+        tExit = Math.min(tExit, Math.max(t1, t2));
+        t1 = (minZ - oz) * invZ;
+        t2 = (maxZ - oz) * invZ;
+        tEnter = Math.max(tEnter, Math.min(t1, t2));
+        tExit = Math.min(tExit, Math.max(t1, t2));
+        tEnter = Math.max(tEnter, 0);
+        if (tExit < tEnter) {
+            return null;
+        }
+
+        // Start cell and the distances to its walls (3D DDA)
+        int cx = cellCoordinate(ox + dx * tEnter, minX, resolutionX);
+        int cy = cellCoordinate(oy + dy * tEnter, minY, resolutionY);
+        int cz = cellCoordinate(oz + dz * tEnter, minZ, resolutionZ);
+        int stepX = dx > 0 ? 1 : -1, stepY = dy > 0 ? 1 : -1, stepZ = dz > 0 ? 1 : -1;
+        double nextX = dx == 0 ? Double.MAX_VALUE : (minX + (cx + (dx > 0 ? 1 : 0)) * cellSize - ox) * invX;
+        double nextY = dy == 0 ? Double.MAX_VALUE : (minY + (cy + (dy > 0 ? 1 : 0)) * cellSize - oy) * invY;
+        double nextZ = dz == 0 ? Double.MAX_VALUE : (minZ + (cz + (dz > 0 ? 1 : 0)) * cellSize - oz) * invZ;
+        double deltaX = dx == 0 ? Double.MAX_VALUE : cellSize * Math.abs(invX);
+        double deltaY = dy == 0 ? Double.MAX_VALUE : cellSize * Math.abs(invY);
+        double deltaZ = dz == 0 ? Double.MAX_VALUE : cellSize * Math.abs(invZ);
+
+        double closest = Double.MAX_VALUE;
+        int closestSphere = -1;
+        while (true) {
+            int cell = cellIndex(cx, cy, cz);
+            for (int k = cellStart[cell], end = cellStart[cell + 1]; k < end; k++) {
+                int i = cellSpheres[k];
+                double ocx = ox - x[i];
+                double ocy = oy - y[i];
+                double ocz = oz - z[i];
+                double r = radius[i];
+
+                // The direction is normalized, so the quadratic reduces to t^2 + 2bt + c
+                double b = ocx * dx + ocy * dy + ocz * dz;
+                double c = ocx * ocx + ocy * ocy + ocz * ocz - r * r;
+                double discriminant = b * b - c;
+                if (discriminant < 0) {
+                    continue;
+                }
+                double root = Math.sqrt(discriminant);
+                double t = -b - root;
+                if (t <= EPSILON) {
+                    t = -b + root;
+                }
+                if (t > EPSILON && t < closest) {
+                    closest = t;
+                    closestSphere = i;
+                }
+            }
+
+            // Spheres reach into neighbouring cells, a hit is only final once it lies before the next cell
+            double cellExit = Math.min(nextX, Math.min(nextY, nextZ));
+            if (closest <= cellExit || cellExit > tExit) {
+                break;
+            }
+            if (nextX <= nextY && nextX <= nextZ) {
+                cx += stepX;
+                nextX += deltaX;
+                if (cx < 0 || cx >= resolutionX) {
+                    break;
+                }
+            } else if (nextY <= nextZ) {
+                cy += stepY;
+                nextY += deltaY;
+                if (cy < 0 || cy >= resolutionY) {
+                    break;
+                }
+            } else {
+                cz += stepZ;
+                nextZ += deltaZ;
+                if (cz < 0 || cz >= resolutionZ) {
+                    break;
+                }
+            }
+        }
+
+        if (closestSphere < 0) {
+            return null;
+        }
+        return sphereHit(ray, closestSphere, closest);
+    }
+
+    private HitInfo sphereHit(Ray ray, int i, double t) {
+        Vector hitPoint = ray.origin().add(ray.direction().scale(t));
+        Vector normal = hitPoint.subtract(new Vector(x[i], y[i], z[i])).normalize();
+        Material hitMaterial = palette.get(material[i] & 0xff);
+
+        // Texture coordinates are only needed for textured materials and are costly to compute
+        if (hitMaterial.getTexture() == null) {
+            return new HitInfo(this, hitMaterial, hitPoint, normal, t, 0, 0, 0);
+        }
+
+        // Same spherical mapping as Sphere
+        double u = 0.5 + Math.atan2(normal.z(), normal.x()) / (2 * Math.PI);
+        double v = 0.5 - Math.asin(normal.y()) / Math.PI;
+        return new HitInfo(this, hitMaterial, hitPoint, normal, t, u, v, 1.0 / (2 * Math.PI * radius[i]));
+    }
+
+    /**
+     * Sorts the spheres of the builder by the cell containing their center (counting sort).
+     *
+     * @return The builder index of the sphere at every sorted position
+     */
+    private int[] sortByCell(Builder builder, int cellCount) {
+        int[] cellOf = new int[count];
+        int[] offsets = new int[cellCount + 1];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cellIndex(cellCoordinate(builder.x[i], minX, resolutionX),
+                    cellCoordinate(builder.y[i], minY, resolutionY),
+                    cellCoordinate(builder.z[i], minZ, resolutionZ));
+            offsets[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cellCount; c++) {
+            offsets[c + 1] += offsets[c];
+        }
+        int[] order = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[offsets[cellOf[i]]++] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Gets the range of cells a sorted sphere overlaps as min x, y, z and max x, y, z.
+     */
+    private int[] cellRange(int i) {
+        double r = radius[i];
+        return new int[]{
+                cellCoordinate(x[i] - r, minX, resolutionX),
+                cellCoordinate(y[i] - r, minY, resolutionY),
+                cellCoordinate(z[i] - r, minZ, resolutionZ),
+                cellCoordinate(x[i] + r, minX, resolutionX),
+                cellCoordinate(y[i] + r, minY, resolutionY),
+                cellCoordinate(z[i] + r, minZ, resolutionZ)
+        };
+    }
+
+    private int cellCoordinate(double value, double min, int resolution) {
+        int coordinate = (int) Math.floor((value - min) / cellSize);
+        return Math.max(0, Math.min(resolution - 1, coordinate));
+    }
+
+    private int cellIndex(int cx, int cy, int cz) {
+        return (cz * resolutionY + cy) * resolutionX + cx;
+    }
+
+    private static int resolution(double extent, double cellSize) {
+        return Math.max(1, Math.min(MAX_RESOLUTION, (int) Math.ceil(extent / cellSize)));
+    }
+
+    /**
+     * Collects spheres into growing primitive arrays.
+     */
+    public static class Builder {
+        private final List<Material> palette = new ArrayList<>();
+        private int count;
+        private float[] x = new float[1024], y = new float[1024], z = new float[1024], radius = new float[1024];
+        private byte[] material = new byte[1024];
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a material to the palette, which holds up to 256 materials.
+         *
+         * @return The index to reference the material with
+         */
+        public int addMaterial(Material material) {
+            if (palette.size() == MAX_PALETTE_SIZE) {
+                throw new IllegalStateException("Material palette is full");
+            }
+            palette.add(material);
+            return palette.size() - 1;
+        }
+
+        /**
+         * Adds a sphere, taking the coordinates directly so no vector is created per sphere.
+         */
+        public Builder addSphere(double centerX, double centerY, double centerZ, double sphereRadius,
+                                 int materialIndex) {
+            if (materialIndex < 0 || materialIndex >= palette.size()) {
+                throw new IllegalArgumentException("Unknown material index: " + materialIndex);
+            }
+            if (count == x.length) {
+                int capacity = x.length * 2;
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+                radius = Arrays.copyOf(radius, capacity);
+                material = Arrays.copyOf(material, capacity);
+            }
+            x[count] = (float) centerX;
+            y[count] = (float) centerY;
+            z[count] = (float) centerZ;
+            radius[count] = (float) sphereRadius;
+            material[count] = (byte) materialIndex;
+            count++;
+            return this;
+        }
+
+        public SphereCloud build() {
+            return new SphereCloud(this);
+        }
+    }
+}
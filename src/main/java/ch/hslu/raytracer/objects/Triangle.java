@@ -1,24 +1,70 @@
 package ch.hslu.raytracer.objects;
 
+import ch.hslu.raytracer.core.Bounds;
 import ch.hslu.raytracer.core.HitInfo;
 import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.TexCoord;
 import ch.hslu.raytracer.core.Vector;
 import ch.hslu.raytracer.materials.Material;
 
 public class Triangle extends Object3D {
     private final Vector v0, v1, v2; // Vertices
     private final Vector normal;     // Normal vector
+    private final TexCoord t0, t1, t2; // Texture coordinates of the vertices
+    private final double uvScale;      // Texture coordinate units per world unit
 
     public Triangle(Vector v0, Vector v1, Vector v2, Material material) {
+        this(v0, v1, v2, new TexCoord(0, 0), new TexCoord(1, 0), new TexCoord(0, 1), material);
+    }
+
+    public Triangle(Vector v0, Vector v1, Vector v2, TexCoord t0, TexCoord t1, TexCoord t2, Material material) {
         super(material);
         this.v0 = v0;
         this.v1 = v1;
         this.v2 = v2;
+        this.t0 = t0;
+        this.t1 = t1;
+        this.t2 = t2;
 
         // Calculate normal using cross product of two edges
         Vector edge1 = v1.subtract(v0);
         Vector edge2 = v2.subtract(v0);
-        this.normal = edge1.cross(edge2).normalize();
+        Vector cross = edge1.cross(edge2);
+        this.normal = cross.normalize();
+
+        // Relate the area in texture space to the area in world space
+        double worldArea = Math.sqrt(cross.dot(cross));
+        double uvArea = Math.abs((t1.u() - t0.u()) * (t2.v() - t0.v()) - (t2.u() - t0.u()) * (t1.v() - t0.v()));
+        this.uvScale = worldArea > 0 ? Math.sqrt(uvArea / worldArea) : 0;
+    }
+
+    public Vector getV0() {
+        return v0;
+    }
+
+    public Vector getV1() {
+        return v1;
+    }
+
+    public Vector getV2() {
+        return v2;
+    }
+
+    TexCoord getT0() {
+        return t0;
+    }
+
+    TexCoord getT1() {
+        return t1;
+    }
+
+    TexCoord getT2() {
+        return t2;
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return Bounds.of(v0, v1, v2);
     }
 
     @Override
@@ -69,6 +115,11 @@ public class Triangle extends Object3D {
             finalNormal = normal.scale(-1);  // Flip normal if needed
         }
 
-        return new HitInfo(this, hitPoint, finalNormal, t);
+        // Interpolate the texture coordinates with the barycentric coordinates u and v
+        double w = 1 - u - v;
+        double texU = w * t0.u() + u * t1.u() + v * t2.u();
+        double texV = w * t0.v() + u * t1.v() + v * t2.v();
+
+        return new HitInfo(this, hitPoint, finalNormal, t, texU, texV, uvScale);
     }
 }
\ No newline at end of file
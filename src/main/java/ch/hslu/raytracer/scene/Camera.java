@@ -7,6 +7,8 @@ import ch.hslu.raytracer.core.Vector;
  * Represents a camera in the scene.
  */
 public class Camera {
+    private static final double NEAR_PLANE = 1e-6;
+
     private final Vector position;
 
     /**
@@ -18,6 +20,13 @@ public class Camera {
         this.position = position;
     }
 
+    /**
+     * Gets the position of the camera.
+     */
+    public Vector getPosition() {
+        return position;
+    }
+
     /**
      * Creates a default camera positioned at (0, 0, -5) looking toward the origin.
      */
@@ -35,8 +44,75 @@ public class Camera {
      * @return The ray from the camera through the specified screen point
      */
     public Ray createRay(double nx, double ny) {
+        return createRay(nx, ny, 0);
+    }
+
+    /**
+     * Creates the primary ray through the top-left corner of a pixel of the frame.
+     *
+     * @param x The pixel column
+     * @param y The pixel row
+     * @param width The width of the frame in pixels
+     * @param height The height of the frame in pixels
+     * @param blockSize The edge length of the pixel block the ray stands for, widens its footprint
+     * @return The ray from the camera through the pixel
+     */
+    public Ray createPixelRay(int x, int y, int width, int height, int blockSize) {
+        double aspectRatio = (double) width / height;
+        return new Ray(position, getPixelDirection(x, y, width, height), 0, 2.0 * aspectRatio / width * blockSize);
+    }
+
+    /**
+     * Gets the direction of the primary ray through the top-left corner of a pixel of the frame.
+     *
+     * @param x The pixel column
+     * @param y The pixel row
+     * @param width The width of the frame in pixels
+     * @param height The height of the frame in pixels
+     * @return The normalized direction
+     */
+    public Vector getPixelDirection(int x, int y, int width, int height) {
+        double aspectRatio = (double) width / height;
+
+        // Convert pixel coordinates to normalized device coordinates with aspect ratio correction
+        double nx = ((x - width / 2.0) / (width / 2.0)) * aspectRatio;
+        double ny = -(y - height / 2.0) / (height / 2.0);
+        return new Vector(nx, ny, 1).normalize();
+    }
+
+    /**
+     * Projects a point onto the frame, the inverse of {@link #createPixelRay}.
+     *
+     * @param point The point to project
+     * @param width The width of the frame in pixels
+     * @param height The height of the frame in pixels
+     * @return The x and y pixel coordinates, or null if the point isn't in front of the camera
+     */
+    public double[] project(Vector point, int width, int height) {
+        Vector d = point.subtract(position);
+        if (d.z() <= NEAR_PLANE) {
+            return null;
+        }
+        double aspectRatio = (double) width / height;
+        double nx = d.x() / d.z();
+        double ny = d.y() / d.z();
+        return new double[]{
+                nx / aspectRatio * (width / 2.0) + width / 2.0,
+                height / 2.0 - ny * (height / 2.0)
+        };
+    }
+
+    /**
+     * Creates a ray from the camera whose footprint grows by the given spread per unit distance.
+     *
+     * @param nx Normalized x-coordinate
+     * @param ny Normalized y-coordinate
+     * @param pixelSpread The size of a pixel in normalized coordinates
+     * @return The ray from the camera through the specified screen point
+     */
+    public Ray createRay(double nx, double ny, double pixelSpread) {
         // nx and ny are now pre-calculated to maintain aspect ratio
         Vector direction = new Vector(nx, ny, 1).normalize();
-        return new Ray(position, direction);
+        return new Ray(position, direction, 0, pixelSpread);
     }
 }
\ No newline at end of file
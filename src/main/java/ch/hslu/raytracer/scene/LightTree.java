@@ -0,0 +1,202 @@
+package ch.hslu.raytracer.scene;
+
+import ch.hslu.raytracer.core.Vector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Binary hierarchy over the lights of a scene used to pick lights by importance.
+ * <p>
+ * Every node stores the bounds and total power of the lights below it. Sampling walks down
+ * from the root and picks a child with a probability proportional to its estimated contribution
+ * at the shaded point, so a sample costs O(log n) regardless of the number of lights.
+ */
+public class LightTree {
+    private final Node root;
+
+    /**
+     * Builds the hierarchy for the given lights.
+     *
+     * @param lights The lights of the scene, must not be empty
+     */
+    public LightTree(List<Light> lights) {
+        if (lights.isEmpty()) {
+            throw new IllegalArgumentException("Cannot build a light tree without lights");
+        }
+        this.root = build(new ArrayList<>(lights));
+    }
+
+    private LightTree(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Rebuilds a hierarchy from its lights in the order of its leaves, see {@link #getLeaves()}.
+     * Splitting in the middle gives the same tree as building from scratch, without sorting again.
+     *
+     * @param leaves The lights in the order of the leaves, must not be empty
+     * @return The hierarchy
+     */
+    static LightTree ofLeaves(List<Light> leaves) {
+        if (leaves.isEmpty()) {
+            throw new IllegalArgumentException("Cannot build a light tree without lights");
+        }
+        return new LightTree(split(leaves));
+    }
+
+    /**
+     * Gets the lights in the order of the leaves from left to right.
+     */
+    List<Light> getLeaves() {
+        List<Light> leaves = new ArrayList<>();
+        collectLeaves(root, leaves);
+        return leaves;
+    }
+
+    /**
+     * Picks a light with a probability proportional to its estimated contribution at a point.
+     *
+     * @param point The point being shaded
+     * @param random A uniformly distributed random number in [0, 1)
+     * @return The sampled light together with the probability it was picked with
+     */
+    public Sample sample(Vector point, double random) {
+        Node node = root;
+        double probability = 1.0;
+
+        while (node.light == null) {
+            double leftImportance = node.left.importance(point);
+            double rightImportance = node.right.importance(point);
+            double leftProbability = leftImportance / (leftImportance + rightImportance);
+
+            // Reuse the random number by rescaling it into the chosen interval
+            if (random < leftProbability) {
+                random = random / leftProbability;
+                probability *= leftProbability;
+                node = node.left;
+            } else {
+                random = (random - leftProbability) / (1 - leftProbability);
+                probability *= 1 - leftProbability;
+                node = node.right;
+            }
+            random = Math.min(random, Math.nextDown(1.0));
+        }
+
+        return new Sample(node.light, probability);
+    }
+
+    private static Node build(List<Light> lights) {
+        if (lights.size() == 1) {
+            return new Node(lights.get(0));
+        }
+
+        // Split at the median along the longest axis of the bounds
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, minZ = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE, maxZ = -Double.MAX_VALUE;
+        for (Light light : lights) {
+            Vector p = light.position();
+            minX = Math.min(minX, p.x());
+            minY = Math.min(minY, p.y());
+            minZ = Math.min(minZ, p.z());
+            maxX = Math.max(maxX, p.x());
+            maxY = Math.max(maxY, p.y());
+            maxZ = Math.max(maxZ, p.z());
+        }
+        double extentX = maxX - minX;
+        double extentY = maxY - minY;
+        double extentZ = maxZ - minZ;
+        Comparator<Light> comparator;
+        if (extentX >= extentY && extentX >= extentZ) {
+            comparator = Comparator.comparingDouble(light -> light.position().x());
+        } else if (extentY >= extentZ) {
+            comparator = Comparator.comparingDouble(light -> light.position().y());
+        } else {
+            comparator = Comparator.comparingDouble(light -> light.position().z());
+        }
+        lights.sort(comparator);
+
+        int middle = lights.size() / 2;
+        return new Node(build(lights.subList(0, middle)), build(lights.subList(middle, lights.size())));
+    }
+
+    private static Node split(List<Light> leaves) {
+        if (leaves.size() == 1) {
+            return new Node(leaves.get(0));
+        }
+        int middle = leaves.size() / 2;
+        return new Node(split(leaves.subList(0, middle)), split(leaves.subList(middle, leaves.size())));
+    }
+
+    private static void collectLeaves(Node node, List<Light> leaves) {
+        if (node.light != null) {
+            leaves.add(node.light);
+        } else {
+            collectLeaves(node.left, leaves);
+            collectLeaves(node.right, leaves);
+        }
+    }
+
+    private static double power(Light light) {
+        // Average of the color channels scaled by intensity
+        double color = (light.color().getRed() + light.color().getGreen() + light.color().getBlue()) / (3 * 255.0);
+        return Math.max(1e-6, light.intensity() * color);
+    }
+
+    /**
+     * A light picked by {@link #sample(Vector, double)}.
+     *
+     * @param light The picked light
+     * @param probability The probability of picking this light
+     */
+    public record Sample(Light light, double probability) {
+    }
+
+    private static class Node {
+        private final double[] min = new double[3];
+        private final double[] max = new double[3];
+        private final double power;
+        private final Light light;
+        private final Node left;
+        private final Node right;
+
+        private Node(Light light) {
+            Vector p = light.position();
+            min[0] = max[0] = p.x();
+            min[1] = max[1] = p.y();
+            min[2] = max[2] = p.z();
+            this.power = power(light);
+            this.light = light;
+            this.left = null;
+            this.right = null;
+        }
+
+        private Node(Node left, Node right) {
+            for (int axis = 0; axis < 3; axis++) {
+                min[axis] = Math.min(left.min[axis], right.min[axis]);
+                max[axis] = Math.max(left.max[axis], right.max[axis]);
+            }
+            this.power = left.power + right.power;
+            this.light = null;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Estimates the contribution of the lights below this node at a point as power over squared distance.
+         * The distance is clamped to the size of the bounds so nearby clusters aren't overestimated.
+         */
+        private double importance(Vector point) {
+            double dx = (min[0] + max[0]) / 2 - point.x();
+            double dy = (min[1] + max[1]) / 2 - point.y();
+            double dz = (min[2] + max[2]) / 2 - point.z();
+            double ex = max[0] - min[0];
+            double ey = max[1] - min[1];
+            double ez = max[2] - min[2];
+            double distanceSquared = dx * dx + dy * dy + dz * dz;
+            double radiusSquared = (ex * ex + ey * ey + ez * ez) / 4;
+            return power / Math.max(Math.max(distanceSquared, radiusSquared), 1e-4);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ch.hslu.raytracer.scene;
+
+/**
+ * Counts the rays traced for one piece of work, e.g. a tile. A counter is handed to every trace
+ * and shade call of that work and is only ever used by one thread at a time, so counting a ray
+ * costs no more than incrementing a field.
+ */
+public final class RayCounter {
+    private long count;
+
+    /**
+     * Counts one traced ray.
+     */
+    void countRay() {
+        count++;
+    }
+
+    /**
+     * Gets the number of rays counted so far.
+     */
+    public long getCount() {
+        return count;
+    }
+}
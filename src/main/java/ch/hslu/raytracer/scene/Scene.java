@@ -5,12 +5,14 @@ import ch.hslu.raytracer.core.Ray;
 import ch.hslu.raytracer.core.Vector;
 import ch.hslu.raytracer.materials.Material;
 import ch.hslu.raytracer.objects.Object3D;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Getter
 @Setter
@@ -19,7 +21,12 @@ public class Scene {
     private final List<Object3D> objects;
     private final List<Light> lights;
     private static final Color BACKGROUND_COLOR = Color.BLACK;
+    private static final double MIN_HIT_DISTANCE = 0.001; // Closer hits are the surface a ray starts from
     private int maxReflectionDepth = 10; // Default value
+    private int lightSamples = 0; // Shadow rays per hit when sampling lights, 0 evaluates every light
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile LightTree lightTree;
 
     public Scene() {
         objects = new ArrayList<>();
@@ -32,17 +39,126 @@ public class Scene {
 
     public void addLight(Light light) {
         lights.add(light);
+        lightTree = null;
+    }
+
+    /**
+     * Builds the light hierarchy used for light sampling, if it isn't built yet.
+     * The hierarchy is built on first use otherwise, call this once the lights are added
+     * to keep the cost out of the first render.
+     *
+     * @return The light hierarchy
+     */
+    public LightTree buildLightTree() {
+        LightTree tree = lightTree;
+        if (tree == null) {
+            synchronized (this) {
+                tree = lightTree;
+                if (tree == null) {
+                    tree = new LightTree(lights);
+                    lightTree = tree;
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Uses a light hierarchy built elsewhere, e.g. one restored from a snapshot.
+     *
+     * @param tree The hierarchy over exactly the lights of this scene
+     */
+    void setLightTree(LightTree tree) {
+        lightTree = tree;
     }
 
     public Color trace(Ray ray) {
-        return trace(ray, 0);
+        return trace(ray, 0, maxReflectionDepth, new RayCounter());
+    }
+
+    /**
+     * Traces a ray with a reflection depth limit that overrides the scene default.
+     *
+     * @param ray The ray to trace
+     * @param maxReflectionDepth The maximum number of reflection bounces
+     * @param rays Counts the rays traced, including shadow and reflection rays
+     * @return The color seen along the ray
+     */
+    public Color trace(Ray ray, int maxReflectionDepth, RayCounter rays) {
+        return trace(ray, 0, maxReflectionDepth, rays);
+    }
+
+    /**
+     * Shades a ray whose closest hit is already known, e.g. from a visibility buffer.
+     *
+     * @param ray The ray that produced the hit
+     * @param hitInfo The closest hit of the ray, or null if it hits nothing
+     * @param maxReflectionDepth The maximum number of reflection bounces
+     * @param rays Counts the rays traced, including the given one
+     * @return The color seen along the ray
+     */
+    public Color shade(Ray ray, HitInfo hitInfo, int maxReflectionDepth, RayCounter rays) {
+        rays.countRay();
+        if (hitInfo != null) {
+            return calculateColor(hitInfo, ray, 0, maxReflectionDepth, null, false, rays);
+        }
+        return BACKGROUND_COLOR;
     }
 
-    private Color trace(Ray ray, int depth) {
+    /**
+     * Shades a primary ray whose closest hit is already known and records which lights reach the hit,
+     * so a later frame can {@link #reshade} the same surface without tracing its shadow rays again.
+     *
+     * @param ray The ray that produced the hit
+     * @param hitInfo The closest hit of the ray, or null if it hits nothing
+     * @param maxReflectionDepth The maximum number of reflection bounces
+     * @param record Receives the shading of the hit, left untouched if the ray hits nothing
+     * @param rays Counts the rays traced, including the given one
+     * @return The color seen along the ray
+     */
+    public Color shade(Ray ray, HitInfo hitInfo, int maxReflectionDepth, ShadingRecord record, RayCounter rays) {
+        rays.countRay();
+        if (hitInfo != null) {
+            return calculateColor(hitInfo, ray, 0, maxReflectionDepth, record, false, rays);
+        }
+        return BACKGROUND_COLOR;
+    }
+
+    /**
+     * Shades a hit near a point recorded in an earlier frame. The lighting is evaluated at the new hit,
+     * but the lights recorded as visible are assumed to still reach it, so no shadow rays are traced.
+     *
+     * @param ray The primary ray of the new frame
+     * @param hitInfo The hit of the ray on the recorded surface
+     * @param maxReflectionDepth The maximum number of reflection bounces
+     * @param record A reusable record, see {@link ShadingRecord#isReusable()}
+     * @param rays Counts the rays traced, including the given one
+     * @return The color seen along the ray
+     */
+    public Color reshade(Ray ray, HitInfo hitInfo, int maxReflectionDepth, ShadingRecord record, RayCounter rays) {
+        if (!record.isReusable()) {
+            throw new IllegalArgumentException("Shading record can't be reused");
+        }
+        rays.countRay();
+        return calculateColor(hitInfo, ray, 0, maxReflectionDepth, record, true, rays);
+    }
+
+    /**
+     * Finds the closest hit of a ray without shading it. The ray is only counted once it is shaded.
+     *
+     * @param ray The ray to intersect with the scene
+     * @return The closest hit, or null if the ray hits nothing
+     */
+    public HitInfo intersect(Ray ray) {
+        return findClosestIntersection(ray);
+    }
+
+    private Color trace(Ray ray, int depth, int maxReflectionDepth, RayCounter rays) {
+        rays.countRay();
         HitInfo hitInfo = findClosestIntersection(ray);
 
         if (hitInfo != null) {
-            return calculateColor(hitInfo, ray, depth);
+            return calculateColor(hitInfo, ray, depth, maxReflectionDepth, null, false, rays);
         }
         return BACKGROUND_COLOR;
     }
@@ -52,8 +168,8 @@ public class Scene {
         double closestDistance = Double.MAX_VALUE;
 
         for (Object3D object : objects) {
-            HitInfo hit = object.intersect(ray);
-            if (hit != null && hit.getDistance() > 0.001 && hit.getDistance() < closestDistance) {
+            HitInfo hit = intersectBeyondOrigin(object, ray);
+            if (hit != null && hit.getDistance() < closestDistance) {
                 closestHit = hit;
                 closestDistance = hit.getDistance();
             }
@@ -62,57 +178,83 @@ public class Scene {
         return closestHit;
     }
 
-    private Color calculateColor(HitInfo hitInfo, Ray ray, int depth) {
-        Material material = hitInfo.getObject().getMaterial();
+    /**
+     * Calculates the color of a hit including lights, shadows and reflections.
+     *
+     * @param record Receives the lights reaching the hit, or null if they aren't needed
+     * @param replay True to take the lights reaching the hit from the record instead of tracing shadow rays
+     * @param rays Counts the shadow and reflection rays traced
+     */
+    private Color calculateColor(HitInfo hitInfo, Ray ray, int depth, int maxReflectionDepth,
+                                 ShadingRecord record, boolean replay, RayCounter rays) {
+        Material material = hitInfo.getMaterial();
         Vector hitPoint = hitInfo.getHitPoint();
+        if (record != null && !replay) {
+            record.record(hitInfo.getObject(), material, hitPoint, hitInfo.getNormal());
+        }
         Vector normal = hitInfo.getNormal();
         Vector viewDirection = ray.direction().scale(-1).normalize();
 
+        // Width of the ray's footprint at the hit, shadow and reflection rays start out with it
+        double footprint = ray.footprintAt(hitInfo.getDistance());
+
         // Start with ambient light component
         Color ambientColor = material.getAmbient();
-        double red = ambientColor.getRed();
-        double green = ambientColor.getGreen();
-        double blue = ambientColor.getBlue();
-
-        // Add contribution from each light source (diffuse and specular)
-        for (Light light : lights) {
-            // Create a vector from the hit point to the light source
-            Vector lightDirection = light.position().subtract(hitPoint).normalize();
-
-            // Check for shadows
-            boolean inShadow = isInShadow(hitPoint, lightDirection);
-
-            if (!inShadow) {
-                // Calculate diffuse lighting using Lambert's cosine law
-                double diffuseFactor = Math.max(0, normal.dot(lightDirection));
-
-                // Diffuse component
-                Color diffuseColor = material.getDiffuse();
-                red += diffuseColor.getRed() * light.intensity() * diffuseFactor * light.color().getRed() / 255.0;
-                green += diffuseColor.getGreen() * light.intensity() * diffuseFactor * light.color().getGreen() / 255.0;
-                blue += diffuseColor.getBlue() * light.intensity() * diffuseFactor * light.color().getBlue() / 255.0;
-
-                // Calculate specular lighting (Phong model)
-                Vector reflectionDir = reflect(lightDirection.scale(-1), normal);
-                double specularFactor = Math.pow(Math.max(0, reflectionDir.dot(viewDirection)),
-                        material.getShininess() * 128); // Scale shininess to make it more noticeable
-
-                // Specular component
-                Color specularColor = material.getSpecular();
-                red += specularColor.getRed() * light.intensity() * specularFactor * light.color().getRed() / 255.0;
-                green += specularColor.getGreen() * light.intensity() * specularFactor * light.color().getGreen() / 255.0;
-                blue += specularColor.getBlue() * light.intensity() * specularFactor * light.color().getBlue() / 255.0;
+        Color diffuseColor = material.getDiffuse();
+
+        // Tint ambient and diffuse with the texture, sampled at the level matching the ray's footprint
+        if (material.getTexture() != null) {
+            Color texel = material.getTexture().sample(hitInfo.getU(), hitInfo.getV(),
+                    footprint * hitInfo.getUvScale());
+            ambientColor = modulate(ambientColor, texel);
+            diffuseColor = modulate(diffuseColor, texel);
+        }
+
+        double[] color = {ambientColor.getRed(), ambientColor.getGreen(), ambientColor.getBlue()};
+
+        if (lightSamples > 0 && lights.size() > lightSamples) {
+            // Pick a fixed number of lights by importance and weight them by their probability
+            LightTree tree = buildLightTree();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < lightSamples; i++) {
+                LightTree.Sample sample = tree.sample(hitPoint, random.nextDouble());
+                addLightContribution(color, sample.light(), 1.0 / (lightSamples * sample.probability()),
+                        material, diffuseColor, hitInfo, normal, viewDirection, footprint, rays);
+            }
+            // The sampled lights differ on every evaluation
+            if (record != null) {
+                record.markViewDependent();
+            }
+        } else {
+            // Add contribution from each light source (diffuse and specular)
+            for (int i = 0; i < lights.size(); i++) {
+                Light light = lights.get(i);
+                if (replay) {
+                    if (record.isLightVisible(i)) {
+                        addLight(color, light, 1.0, material, diffuseColor, normal, viewDirection,
+                                light.position().subtract(hitPoint).normalize());
+                    }
+                } else if (addLightContribution(color, light, 1.0, material, diffuseColor, hitInfo, normal,
+                        viewDirection, footprint, rays) && record != null) {
+                    record.addVisibleLight(i);
+                }
             }
         }
+        double red = color[0];
+        double green = color[1];
+        double blue = color[2];
 
         // Add reflection component if we haven't reached the maximum depth
         double reflectivity = material.getReflectivity();
         if (reflectivity > 0 && depth < maxReflectionDepth) {
+            if (record != null && !replay) {
+                record.markViewDependent();
+            }
             Vector reflectionDir = reflect(ray.direction(), normal);
-            Ray reflectionRay = new Ray(hitPoint, reflectionDir);
+            Ray reflectionRay = new Ray(hitInfo, reflectionDir, footprint, ray.coneSpread(), depth + 1);
 
             // Get the color from the reflection ray
-            Color reflectionColor = trace(reflectionRay, depth + 1);
+            Color reflectionColor = trace(reflectionRay, depth + 1, maxReflectionDepth, rays);
 
             // Add reflection component weighted by reflectivity
             red = red * (1 - reflectivity) + reflectionColor.getRed() * reflectivity;
@@ -128,23 +270,105 @@ public class Scene {
         return new Color((int) red, (int) green, (int) blue);
     }
 
+    /**
+     * Adds the diffuse and specular contribution of a light to the given color, unless the point is in shadow.
+     *
+     * @param color The red, green and blue components to add to
+     * @param weight The factor applied to the contribution, 1 unless the light was sampled
+     * @param footprint The width of the ray's footprint at the point
+     * @param rays Counts the shadow ray
+     * @return True if the light reaches the point
+     */
+    private boolean addLightContribution(double[] color, Light light, double weight, Material material,
+                                         Color diffuseColor, HitInfo hitInfo, Vector normal, Vector viewDirection,
+                                         double footprint, RayCounter rays) {
+        // Create a vector from the hit point to the light source
+        Vector lightDirection = light.position().subtract(hitInfo.getHitPoint()).normalize();
+
+        // Check for shadows
+        if (isInShadow(hitInfo, lightDirection, footprint, rays)) {
+            return false;
+        }
+
+        addLight(color, light, weight, material, diffuseColor, normal, viewDirection, lightDirection);
+        return true;
+    }
+
+    /**
+     * Adds the diffuse and specular contribution of a light that is known to reach the point.
+     */
+    private void addLight(double[] color, Light light, double weight, Material material, Color diffuseColor,
+                          Vector normal, Vector viewDirection, Vector lightDirection) {
+        double intensity = light.intensity() * weight;
+
+        // Calculate diffuse lighting using Lambert's cosine law
+        double diffuseFactor = Math.max(0, normal.dot(lightDirection));
+
+        // Diffuse component
+        color[0] += diffuseColor.getRed() * intensity * diffuseFactor * light.color().getRed() / 255.0;
+        color[1] += diffuseColor.getGreen() * intensity * diffuseFactor * light.color().getGreen() / 255.0;
+        color[2] += diffuseColor.getBlue() * intensity * diffuseFactor * light.color().getBlue() / 255.0;
+
+        // Calculate specular lighting (Phong model)
+        Vector reflectionDir = reflect(lightDirection.scale(-1), normal);
+        double specularFactor = Math.pow(Math.max(0, reflectionDir.dot(viewDirection)),
+                material.getShininess() * 128); // Scale shininess to make it more noticeable
+
+        // Specular component
+        Color specularColor = material.getSpecular();
+        color[0] += specularColor.getRed() * intensity * specularFactor * light.color().getRed() / 255.0;
+        color[1] += specularColor.getGreen() * intensity * specularFactor * light.color().getGreen() / 255.0;
+        color[2] += specularColor.getBlue() * intensity * specularFactor * light.color().getBlue() / 255.0;
+    }
+
+    // Helper method to multiply a color with a texel
+    private static Color modulate(Color color, Color texel) {
+        return new Color(
+                color.getRed() * texel.getRed() / 255,
+                color.getGreen() * texel.getGreen() / 255,
+                color.getBlue() * texel.getBlue() / 255
+        );
+    }
+
     // Helper method to calculate reflection vector
     private Vector reflect(Vector incident, Vector normal) {
         double dot = incident.dot(normal);
         return incident.subtract(normal.scale(2 * dot));
     }
 
-    private boolean isInShadow(Vector hitPoint, Vector lightDirection) {
-        // Create a ray from hit point toward light
-        Ray shadowRay = new Ray(hitPoint, lightDirection);
+    private boolean isInShadow(HitInfo hitInfo, Vector lightDirection, double footprint, RayCounter rays) {
+        // Create a ray from hit point toward light, as wide as the footprint so occluders use the same level of detail
+        rays.countRay();
+        Ray shadowRay = new Ray(hitInfo, lightDirection, footprint, 0, 0);
 
         // Check if any object blocks the light
         for (Object3D object : objects) {
-            HitInfo hit = object.intersect(shadowRay);
-            if (hit != null && hit.getDistance() > 0.001) { // Small epsilon to avoid self-intersection
+            if (intersectBeyondOrigin(object, shadowRay) != null) {
                 return true; // This point is in shadow
             }
         }
         return false;
     }
+
+    /**
+     * Intersects an object ignoring hits within {@link #MIN_HIT_DISTANCE} of the ray origin. An object holding
+     * many primitives only reports its closest hit, so a self-intersection would otherwise hide the primitives
+     * behind it, and a scene would render differently once its objects are packed, e.g. by {@link SceneSnapshot}.
+     */
+    private static HitInfo intersectBeyondOrigin(Object3D object, Ray ray) {
+        HitInfo hit = object.intersect(ray);
+        if (hit == null || hit.getDistance() > MIN_HIT_DISTANCE) {
+            return hit;
+        }
+
+        // Look again from past the self-intersection, the distance stays measured from the original origin
+        Ray offsetRay = new Ray(ray.origin().add(ray.direction().scale(MIN_HIT_DISTANCE)), ray.direction(),
+                ray.footprintAt(MIN_HIT_DISTANCE), ray.coneSpread(), ray.depth(), ray.source(), ray.sourceLevel());
+        hit = object.intersect(offsetRay);
+        if (hit == null) {
+            return null;
+        }
+        return new HitInfo(hit.getObject(), hit.getMaterial(), hit.getHitPoint(), hit.getNormal(),
+                hit.getDistance() + MIN_HIT_DISTANCE, hit.getU(), hit.getV(), hit.getUvScale(), hit.getLevel());
+    }
 }
\ No newline at end of file
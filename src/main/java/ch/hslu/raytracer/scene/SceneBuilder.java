@@ -3,16 +3,21 @@ package ch.hslu.raytracer.scene;
 import ch.hslu.raytracer.core.Vector;
 import ch.hslu.raytracer.materials.Material;
 import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.objects.Mesh;
+import ch.hslu.raytracer.objects.Object3D;
 import ch.hslu.raytracer.objects.RotatedCube;
 import ch.hslu.raytracer.objects.Sphere;
+import ch.hslu.raytracer.objects.Triangle;
 
 import java.awt.Color;
+import java.util.List;
 
 /**
  * Builder class for creating scenes with a fluent API.
  */
 public class SceneBuilder {
     private final Scene scene;
+    private boolean levelsOfDetail;
 
     public SceneBuilder() {
         scene = new Scene();
@@ -26,6 +31,14 @@ public class SceneBuilder {
         return this;
     }
 
+    /**
+     * Adds a sphere with a custom material, e.g. a textured one, to the scene.
+     */
+    public SceneBuilder addSphere(Vector center, double radius, Material material) {
+        scene.addObject(new Sphere(center, radius, material));
+        return this;
+    }
+
     /**
      * Adds a rotated cube to the scene.
      */
@@ -38,6 +51,42 @@ public class SceneBuilder {
         return this;
     }
 
+    /**
+     * Adds a rotated cube with a custom material, e.g. a textured one, to the scene.
+     */
+    public SceneBuilder addRotatedCube(Vector center, double size, Material material,
+                                       double rotationX, double rotationY, double rotationZ) {
+        scene.addObject(new RotatedCube(
+                center, size, material,
+                Math.toRadians(rotationX), Math.toRadians(rotationY), Math.toRadians(rotationZ)
+        ));
+        return this;
+    }
+
+    /**
+     * Adds a single triangle to the scene.
+     */
+    public SceneBuilder addTriangle(Vector v0, Vector v1, Vector v2, MaterialType material, double reflectivity) {
+        scene.addObject(new Triangle(v0, v1, v2, Material.create(material, reflectivity)));
+        return this;
+    }
+
+    /**
+     * Adds a triangle mesh to the scene, its levels of detail are generated right away.
+     */
+    public SceneBuilder addMesh(List<Triangle> triangles) {
+        scene.addObject(new Mesh(triangles));
+        return this;
+    }
+
+    /**
+     * Adds any object, e.g. a packed geometry store, to the scene.
+     */
+    public SceneBuilder addObject(Object3D object) {
+        scene.addObject(object);
+        return this;
+    }
+
     /**
      * Adds a light source to the scene.
      */
@@ -46,10 +95,36 @@ public class SceneBuilder {
         return this;
     }
 
+    /**
+     * Enables light sampling, each hit then traces the given number of shadow rays towards
+     * lights picked by importance instead of one per light.
+     */
+    public SceneBuilder withLightSampling(int shadowRays) {
+        scene.setLightSamples(shadowRays);
+        return this;
+    }
+
+    /**
+     * Turns every rotated cube into a mesh with levels of detail when the scene is built,
+     * so cubes covering less than a pixel are intersected as a single sphere.
+     */
+    public SceneBuilder withLevelsOfDetail() {
+        levelsOfDetail = true;
+        return this;
+    }
+
     /**
      * Builds and returns the constructed scene.
      */
     public Scene build() {
+        if (levelsOfDetail) {
+            scene.getObjects().replaceAll(object -> object instanceof RotatedCube cube ? new Mesh(cube) : object);
+        }
+
+        // Build the light hierarchy up front instead of during the first render
+        if (scene.getLightSamples() > 0 && !scene.getLights().isEmpty()) {
+            scene.buildLightTree();
+        }
         return scene;
     }
 }
\ No newline at end of file
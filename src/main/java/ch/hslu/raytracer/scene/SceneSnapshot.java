@@ -0,0 +1,348 @@
+package ch.hslu.raytracer.scene;
+
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.objects.Object3D;
+import ch.hslu.raytracer.objects.PackedGeometry;
+
+import java.awt.Color;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Binary snapshot of a built scene that is ready to trace right after loading.
+ * <p>
+ * Spheres, triangles and cubes are stored as packed geometry with the cube rotations already applied
+ * and the chunk bounds precomputed, next to the materials, lights and scene settings. Loading maps every
+ * primitive column into memory on its own and traces directly on the mapped buffers, so snapshots may
+ * be larger than a single 2GB mapping. Scenes sampling their lights also store the order of the leaves
+ * of their light hierarchy, which is then restored without sorting the lights again.
+ * <p>
+ * The header holds the format version and a hash of whatever the scene was built from, e.g. the
+ * parameters of a generator. A snapshot whose version or hash doesn't match is ignored, so a stale
+ * file is rebuilt instead of being rendered.
+ */
+public final class SceneSnapshot {
+    private static final int MAGIC = 0x52545353; // "RTSS"
+    private static final int FORMAT_VERSION = 2; // Increment whenever the layout changes
+    private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final int HEADER_BYTES = 48;
+    private static final int MATERIAL_BYTES = 32;
+    private static final int LIGHT_BYTES = 40;
+
+    private SceneSnapshot() {
+    }
+
+    /**
+     * Loads the snapshot of a scene, or builds the scene and writes its snapshot if there is no
+     * valid one. Either way the returned scene traces on the snapshot, so the first run renders
+     * the same image as later ones. A scene that can't be stored, e.g. one containing a
+     * {@link ch.hslu.raytracer.objects.SphereCloud}, is returned as built.
+     *
+     * @param file The snapshot file
+     * @param sceneHash The hash of what the scene is built from, see {@link #hash}
+     * @param builder Builds the scene if the snapshot is missing or stale
+     * @return The scene
+     */
+    public static Scene loadOrBuild(Path file, long sceneHash, Supplier<Scene> builder) {
+        try {
+            Scene scene = load(file, sceneHash);
+            if (scene != null) {
+                return scene;
+            }
+        } catch (IOException e) {
+            System.err.println("Error loading scene snapshot: " + e.getMessage());
+        }
+
+        Scene scene = builder.get();
+        try {
+            write(scene, sceneHash, file);
+            Scene loaded = load(file, sceneHash);
+            if (loaded != null) {
+                return loaded;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error saving scene snapshot: " + e.getMessage());
+        }
+        return scene;
+    }
+
+    /**
+     * Loads a snapshot by mapping its primitive columns into memory.
+     *
+     * @param file The snapshot file
+     * @param sceneHash The hash the snapshot must have been written with
+     * @return The scene, or null if the file doesn't exist or was written for another scene or format
+     * @throws IOException If the file can't be read
+     */
+    public static Scene load(Path file, long sceneHash) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES) {
+                return null;
+            }
+            ByteBuffer header = read(channel, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != FORMAT_VERSION || header.getLong() != sceneHash
+                    || header.getLong() != channel.size()) {
+                return null;
+            }
+            int maxReflectionDepth = header.getInt();
+            int lightSamples = header.getInt();
+            int materialCount = header.getInt();
+            int lightCount = header.getInt();
+            int sectionCount = header.getInt();
+            boolean lightTreeStored = header.getInt() != 0;
+
+            ByteBuffer tables = read(channel, tableBytes(materialCount, lightCount, lightTreeStored));
+            List<Material> materials = new ArrayList<>(materialCount);
+            for (int i = 0; i < materialCount; i++) {
+                materials.add(readMaterial(tables));
+            }
+
+            Scene scene = new Scene();
+            scene.setMaxReflectionDepth(maxReflectionDepth);
+            scene.setLightSamples(lightSamples);
+            for (int i = 0; i < lightCount; i++) {
+                scene.addLight(readLight(tables));
+            }
+            if (lightTreeStored) {
+                List<Light> leaves = new ArrayList<>(lightCount);
+                for (int i = 0; i < lightCount; i++) {
+                    leaves.add(scene.getLights().get(tables.getInt()));
+                }
+                scene.setLightTree(LightTree.ofLeaves(leaves));
+            }
+
+            for (int i = 0; i < sectionCount; i++) {
+                int sectionMaterialCount = read(channel, Integer.BYTES).getInt();
+                ByteBuffer indices = read(channel, (int) (sectionTableBytes(sectionMaterialCount) - Integer.BYTES));
+                List<Material> sectionMaterials = new ArrayList<>(sectionMaterialCount);
+                for (int j = 0; j < sectionMaterialCount; j++) {
+                    sectionMaterials.add(materials.get(indices.getInt()));
+                }
+                scene.addObject(PackedGeometry.map(channel, BYTE_ORDER, sectionMaterials));
+            }
+            return scene;
+        }
+    }
+
+    /**
+     * Writes the snapshot of a scene. The file is replaced only once the snapshot is complete,
+     * so a concurrent reader never sees a partial one.
+     *
+     * @param scene The scene, its objects must be spheres, triangles, rotated cubes or packed geometry
+     * @param sceneHash The hash of what the scene is built from, see {@link #hash}
+     * @param file The snapshot file
+     * @throws IOException If the file can't be written
+     * @throws IllegalArgumentException If the scene contains other objects or textured materials
+     */
+    public static void write(Scene scene, long sceneHash, Path file) throws IOException {
+        List<PackedGeometry> sections = createSections(scene.getObjects());
+        List<Light> lights = scene.getLights();
+        boolean storeLightTree = scene.getLightSamples() > 0 && !lights.isEmpty();
+
+        Map<Material, Integer> materialIds = new IdentityHashMap<>();
+        List<Material> materials = new ArrayList<>();
+        long sectionBytes = 0;
+        for (PackedGeometry section : sections) {
+            for (Material material : section.getMaterials()) {
+                if (material.getTexture() != null) {
+                    throw new IllegalArgumentException("Textured materials can't be stored in a snapshot");
+                }
+                if (materialIds.putIfAbsent(material, materials.size()) == null) {
+                    materials.add(material);
+                }
+            }
+            sectionBytes += sectionTableBytes(section.getMaterials().size()) + section.getSerializedSize();
+        }
+        int tableBytes = tableBytes(materials.size(), lights.size(), storeLightTree);
+        long size = HEADER_BYTES + tableBytes + sectionBytes;
+
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES + tableBytes).order(BYTE_ORDER);
+                header.putInt(MAGIC);
+                header.putInt(FORMAT_VERSION);
+                header.putLong(sceneHash);
+                header.putLong(size);
+                header.putInt(scene.getMaxReflectionDepth());
+                header.putInt(scene.getLightSamples());
+                header.putInt(materials.size());
+                header.putInt(lights.size());
+                header.putInt(sections.size());
+                header.putInt(storeLightTree ? 1 : 0);
+
+                for (Material material : materials) {
+                    writeMaterial(header, material);
+                }
+                for (Light light : lights) {
+                    writeLight(header, light);
+                }
+                if (storeLightTree) {
+                    // The leaves refer to the lights by index, equal lights may appear more than once
+                    Map<Light, Integer> lightIds = new IdentityHashMap<>();
+                    for (int i = 0; i < lights.size(); i++) {
+                        lightIds.put(lights.get(i), i);
+                    }
+                    for (Light leaf : scene.buildLightTree().getLeaves()) {
+                        header.putInt(lightIds.get(leaf));
+                    }
+                }
+                writeFully(channel, header.clear());
+
+                for (PackedGeometry section : sections) {
+                    int count = section.getMaterials().size();
+                    ByteBuffer table = ByteBuffer.allocate((int) sectionTableBytes(count)).order(BYTE_ORDER);
+                    table.putInt(count);
+                    for (Material material : section.getMaterials()) {
+                        table.putInt(materialIds.get(material));
+                    }
+                    writeFully(channel, table.clear());
+                    section.write(channel, BYTE_ORDER);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Creates a 64-bit hash of the given parts, e.g. the parameters a scene is generated from.
+     *
+     * @param parts The values identifying the scene, compared by their string form
+     * @return The hash to store in and check against snapshots
+     */
+    public static long hash(Object... parts) {
+        // 64-bit FNV-1a, stable across runs unlike Object.hashCode
+        long hash = 0xcbf29ce484222325L;
+        for (Object part : parts) {
+            for (byte b : (String.valueOf(part) + '\0').getBytes(StandardCharsets.UTF_8)) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Packs consecutive primitives into one section, packed geometry already in the scene stays its own section.
+     */
+    private static List<PackedGeometry> createSections(List<Object3D> objects) {
+        List<PackedGeometry> sections = new ArrayList<>();
+        PackedGeometry.Builder builder = null;
+        for (Object3D object : objects) {
+            if (object instanceof PackedGeometry packed) {
+                if (builder != null) {
+                    sections.add(builder.build());
+                    builder = null;
+                }
+                sections.add(packed);
+            } else {
+                if (builder == null) {
+                    builder = PackedGeometry.builder();
+                }
+                builder.addObject(object);
+            }
+        }
+        if (builder != null) {
+            sections.add(builder.build());
+        }
+        return sections;
+    }
+
+    private static void writeMaterial(ByteBuffer data, Material material) {
+        data.putInt(material.getType() == null ? -1 : material.getType().ordinal());
+        data.putInt(material.getAmbient().getRGB());
+        data.putInt(material.getDiffuse().getRGB());
+        data.putInt(material.getSpecular().getRGB());
+        data.putDouble(material.getShininess());
+        data.putDouble(material.getReflectivity());
+    }
+
+    private static Material readMaterial(ByteBuffer data) {
+        int type = data.getInt();
+        Color ambient = new Color(data.getInt(), true);
+        Color diffuse = new Color(data.getInt(), true);
+        Color specular = new Color(data.getInt(), true);
+        double shininess = data.getDouble();
+        double reflectivity = data.getDouble();
+        return new Material(type < 0 ? null : MaterialType.values()[type], ambient, diffuse, specular,
+                shininess, reflectivity);
+    }
+
+    private static void writeLight(ByteBuffer data, Light light) {
+        data.putDouble(light.position().x());
+        data.putDouble(light.position().y());
+        data.putDouble(light.position().z());
+        data.putInt(light.color().getRGB());
+        data.putInt(0); // Padding
+        data.putDouble(light.intensity());
+    }
+
+    private static Light readLight(ByteBuffer data) {
+        Vector position = new Vector(data.getDouble(), data.getDouble(), data.getDouble());
+        Color color = new Color(data.getInt(), true);
+        data.getInt(); // Padding
+        return new Light(position, color, data.getDouble());
+    }
+
+    /**
+     * Gets the size of the materials, the lights and the light hierarchy following the header.
+     */
+    private static int tableBytes(int materialCount, int lightCount, boolean lightTreeStored) {
+        long bytes = (long) materialCount * MATERIAL_BYTES + (long) lightCount * LIGHT_BYTES
+                + (lightTreeStored ? align((long) lightCount * Integer.BYTES) : 0);
+        if (bytes > Integer.MAX_VALUE - HEADER_BYTES) {
+            throw new IllegalArgumentException("Too many materials and lights for a snapshot");
+        }
+        return (int) bytes;
+    }
+
+    // The material indices of a section are padded so its packed geometry stays aligned to eight bytes
+    private static long sectionTableBytes(int materialCount) {
+        return align(Integer.BYTES + (long) materialCount * Integer.BYTES);
+    }
+
+    private static ByteBuffer read(FileChannel channel, int bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(bytes).order(BYTE_ORDER);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Scene snapshot is truncated");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static long align(long bytes) {
+        return (bytes + Double.BYTES - 1) / Double.BYTES * Double.BYTES;
+    }
+}
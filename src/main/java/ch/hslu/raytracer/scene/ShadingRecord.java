@@ -0,0 +1,56 @@
+package ch.hslu.raytracer.scene;
+
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.objects.Object3D;
+import lombok.Getter;
+
+/**
+ * The lights reaching a primary hit, recorded so later frames seen from another camera position
+ * can shade nearby points of the same surface without tracing the shadow rays again.
+ * <p>
+ * The lighting itself is evaluated anew for every frame, only the shadow test is reused. A record is
+ * therefore only reusable if every light was tested and no reflection was traced, see {@link #isReusable()}.
+ */
+@Getter
+public class ShadingRecord {
+    public static final int MAX_LIGHTS = Long.SIZE; // One bit per light in the visibility mask
+
+    private Object3D object;     // The object that was hit
+    private Material material;   // The material at the hit, may differ between primitives of one object
+    private Vector hitPoint;     // The point the shadow rays were traced from
+    private Vector normal;       // The surface normal at the point
+    private long visibleLights;  // Bit i is set if light i was not in shadow
+    private boolean reusable;
+
+    /**
+     * Checks if a light reached the recorded point.
+     *
+     * @param index The index of the light in the scene
+     */
+    public boolean isLightVisible(int index) {
+        return index < MAX_LIGHTS && (visibleLights & (1L << index)) != 0;
+    }
+
+    void record(Object3D object, Material material, Vector hitPoint, Vector normal) {
+        this.object = object;
+        this.material = material;
+        this.hitPoint = hitPoint;
+        this.normal = normal;
+        this.visibleLights = 0;
+        this.reusable = true;
+    }
+
+    void addVisibleLight(int index) {
+        if (index >= MAX_LIGHTS) {
+            // The mask can't hold the light, the record has to be traced again
+            reusable = false;
+            return;
+        }
+        visibleLights |= 1L << index;
+    }
+
+    void markViewDependent() {
+        reusable = false;
+    }
+}
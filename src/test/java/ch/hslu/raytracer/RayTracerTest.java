@@ -0,0 +1,61 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.benchmark.ProceduralScenes;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RayTracerTest {
+    private static final RenderSettings SETTINGS = RenderSettings.builder()
+            .width(160).height(90).maxReflectionDepth(2).numThreads(1).build();
+
+    private final Scene scene = ProceduralScenes.create("spheres", 100, 2, 1);
+    private final RayTracer rayTracer = new RayTracer();
+
+    @Test
+    void croppedRenderMatchesFullRender() {
+        Rectangle crop = new Rectangle(37, 21, 50, 30);
+        BufferedImage full = rayTracer.render(scene, Camera.createDefault(), SETTINGS);
+        BufferedImage cropped = rayTracer.render(scene, Camera.createDefault(),
+                SETTINGS.toBuilder().cropWindow(crop).build());
+
+        assertEquals(crop.width, cropped.getWidth());
+        assertEquals(crop.height, cropped.getHeight());
+        for (int y = 0; y < crop.height; y++) {
+            for (int x = 0; x < crop.width; x++) {
+                assertEquals(full.getRGB(crop.x + x, crop.y + y), cropped.getRGB(x, y), "Pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void croppedDraftMatchesFullDraft() {
+        RenderSettings draft = RenderSettings.createDraft(SETTINGS, 0.5);
+        BufferedImage full = rayTracer.render(scene, Camera.createDefault(), draft);
+        BufferedImage cropped = rayTracer.render(scene, Camera.createDefault(),
+                draft.toBuilder().cropWindow(new Rectangle(40, 20, 60, 40)).build());
+
+        assertEquals(80, full.getWidth());
+        assertEquals(45, full.getHeight());
+        assertEquals(30, cropped.getWidth());
+        assertEquals(20, cropped.getHeight());
+        for (int y = 0; y < cropped.getHeight(); y++) {
+            for (int x = 0; x < cropped.getWidth(); x++) {
+                assertEquals(full.getRGB(20 + x, 10 + y), cropped.getRGB(x, y), "Pixel " + x + ", " + y);
+            }
+        }
+    }
+
+    @Test
+    void cropWindowOutsideFrameIsRejected() {
+        RenderSettings settings = SETTINGS.toBuilder().cropWindow(new Rectangle(200, 0, 10, 10)).build();
+
+        assertThrows(IllegalArgumentException.class, () -> rayTracer.render(scene, Camera.createDefault(), settings));
+    }
+}
@@ -0,0 +1,186 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+import ch.hslu.raytracer.scene.SceneBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderEngineTest {
+    private static final RenderSettings SETTINGS = RenderSettings.builder()
+            .width(160).height(90).maxReflectionDepth(2).numThreads(1).build();
+    private static final RenderSettings LARGE_SETTINGS = RenderSettings.builder()
+            .width(1920).height(1080).maxReflectionDepth(10).numThreads(1).build();
+
+    /**
+     * Creates a scene of lit spheres enclosed by a sphere, so no pixel of a traced line is black.
+     */
+    private static Scene enclosedScene(int objects) {
+        MaterialType[] materials = {MaterialType.RUBY, MaterialType.GOLD, MaterialType.PEARL};
+        Random random = new Random(1);
+        SceneBuilder builder = new SceneBuilder()
+                .addSphere(new Vector(0, 0, 0), 100, MaterialType.JADE, 0)
+                .addLight(new Vector(-5, 5, -5), Color.WHITE, 1);
+        for (int i = 0; i < objects; i++) {
+            Vector center = new Vector(random.nextDouble() * 20 - 10, random.nextDouble() * 12 - 6,
+                    random.nextDouble() * 20 + 4);
+            builder.addSphere(center, 0.1 + random.nextDouble() * 0.4, materials[i % materials.length], 0.5);
+        }
+        return builder.build();
+    }
+
+    @Test
+    void exhaustedBudgetStillCompletesEveryLine() throws Exception {
+        RenderSettings settings = LARGE_SETTINGS.toBuilder().width(320).height(180).timeBudgetMillis(1).build();
+
+        try (RenderEngine engine = new RenderEngine(1)) {
+            BufferedImage image = engine.render(enclosedScene(2000), Camera.createDefault(), settings)
+                    .get(60, TimeUnit.SECONDS);
+
+            assertEquals(320, image.getWidth());
+            assertEquals(180, image.getHeight());
+            for (int y = 0; y < image.getHeight(); y++) {
+                for (int x = 0; x < image.getWidth(); x++) {
+                    assertNotEquals(0, image.getRGB(x, y) & 0xFFFFFF, "Pixel " + x + ", " + y + " was never traced");
+                }
+            }
+        }
+    }
+
+    @Test
+    void budgetedRenderWithoutPressureMatchesUnlimitedRender() throws Exception {
+        Scene scene = enclosedScene(100);
+        try (RenderEngine engine = new RenderEngine(1)) {
+            BufferedImage unlimited = engine.render(scene, Camera.createDefault(), SETTINGS).get();
+            BufferedImage budgeted = engine.render(scene, Camera.createDefault(),
+                    SETTINGS.toBuilder().timeBudgetMillis(600_000).build()).get();
+
+            assertSameImage(unlimited, budgeted);
+        }
+    }
+
+    @Test
+    void cancellingFreesWorkersForOtherRenders() throws Exception {
+        try (RenderEngine engine = new RenderEngine(1)) {
+            CompletableFuture<BufferedImage> large = engine.render(enclosedScene(2000), Camera.createDefault(),
+                    LARGE_SETTINGS);
+            Thread.sleep(100);
+            large.cancel(true);
+
+            // The only worker stops the cancelled render at its next pixel
+            engine.render(enclosedScene(10), Camera.createDefault(), SETTINGS).get(30, TimeUnit.SECONDS);
+            assertTrue(large.isCancelled());
+        }
+    }
+
+    @Test
+    void smallRenderFinishesWhileLargeRenderIsRunning() throws Exception {
+        Scene scene = enclosedScene(10);
+        BufferedImage expected = new RayTracer().render(scene, Camera.createDefault(), SETTINGS);
+
+        try (RenderEngine engine = new RenderEngine(1)) {
+            CompletableFuture<BufferedImage> large = engine.render(enclosedScene(2000), Camera.createDefault(),
+                    LARGE_SETTINGS);
+            // The only worker alternates between the tiles of both renders
+            BufferedImage small = engine.render(scene, Camera.createDefault(), SETTINGS).get(30, TimeUnit.SECONDS);
+
+            assertFalse(large.isDone());
+            assertSameImage(expected, small);
+            large.cancel(true);
+        }
+    }
+
+    @Test
+    void closeCancelsUnfinishedRendersAndRejectsNewOnes() {
+        RenderEngine engine = new RenderEngine(1);
+        CompletableFuture<BufferedImage> large = engine.render(enclosedScene(2000), Camera.createDefault(),
+                LARGE_SETTINGS);
+        engine.close();
+
+        assertTrue(large.isCancelled());
+        assertEquals(0, engine.getActiveRenderCount());
+        assertThrows(IllegalStateException.class,
+                () -> engine.render(enclosedScene(10), Camera.createDefault(), SETTINGS));
+        assertThrows(IllegalStateException.class,
+                () -> engine.render(enclosedScene(10), List.of(new RenderView(Camera.createDefault(), SETTINGS))));
+    }
+
+    @Test
+    void cancellingOneViewLeavesOtherViewsComplete() throws Exception {
+        Scene scene = enclosedScene(100);
+        List<Camera> cameras = List.of(Camera.createDefault(), new Camera(new Vector(1, 0.5, -3)),
+                new Camera(new Vector(-1, 0, -2)));
+
+        try (RenderEngine engine = new RenderEngine(2)) {
+            List<CompletableFuture<BufferedImage>> futures = engine.render(scene, List.of(
+                    new RenderView(cameras.get(0), SETTINGS), new RenderView(cameras.get(1), SETTINGS),
+                    new RenderView(cameras.get(2), SETTINGS)));
+            futures.get(1).cancel(true);
+
+            assertSameImage(new RayTracer().render(scene, cameras.get(0), SETTINGS),
+                    futures.get(0).get(30, TimeUnit.SECONDS));
+            assertSameImage(new RayTracer().render(scene, cameras.get(2), SETTINGS),
+                    futures.get(2).get(30, TimeUnit.SECONDS));
+            assertTrue(futures.get(1).isCancelled());
+        }
+    }
+
+    @Test
+    void cancellingRunningViewStartsNextView() throws Exception {
+        Scene scene = enclosedScene(2000);
+        BufferedImage expected = new RayTracer().render(scene, Camera.createDefault(), SETTINGS);
+
+        try (RenderEngine engine = new RenderEngine(1)) {
+            List<CompletableFuture<BufferedImage>> futures = engine.render(scene, List.of(
+                    new RenderView(Camera.createDefault(), LARGE_SETTINGS),
+                    new RenderView(Camera.createDefault(), SETTINGS)));
+            Thread.sleep(100);
+            futures.get(0).cancel(true);
+
+            assertSameImage(expected, futures.get(1).get(30, TimeUnit.SECONDS));
+            assertTrue(futures.get(0).isCancelled());
+        }
+    }
+
+    @Test
+    void interruptedRenderReturnsImageOfRegion() throws Exception {
+        AtomicReference<BufferedImage> result = new AtomicReference<>();
+        Thread caller = new Thread(() -> result.set(new RayTracer().render(enclosedScene(2000),
+                Camera.createDefault(), LARGE_SETTINGS)));
+        caller.start();
+        Thread.sleep(100);
+        caller.interrupt();
+        caller.join(30_000);
+
+        assertFalse(caller.isAlive());
+        assertNotNull(result.get());
+        assertEquals(LARGE_SETTINGS.getRenderWidth(), result.get().getWidth());
+        assertEquals(LARGE_SETTINGS.getRenderHeight(), result.get().getHeight());
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "Pixel " + x + ", " + y);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+import ch.hslu.raytracer.scene.SceneBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TemporalHistoryTest {
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 90;
+    private static final int FRAMES = 6;
+    private static final int MAX_CHANNEL_ERROR = 2;  // Rounding of the reused light contributions
+    private static final double MAX_WRONG_PIXELS = 0.002;
+
+    @Test
+    void flyThroughMatchesFullRenders() throws Exception {
+        Random random = new Random(5);
+        SceneBuilder builder = new SceneBuilder().addSphere(new Vector(0, -1001, 0), 1000, MaterialType.JADE, 0);
+        for (int i = 0; i < 60; i++) {
+            MaterialType type = MaterialType.values()[random.nextInt(MaterialType.values().length)];
+            Vector center = new Vector(random.nextDouble() * 8 - 4, random.nextDouble() * 3 - 1,
+                    random.nextDouble() * 10 + 2);
+            if (i % 2 == 0) {
+                builder.addSphere(center, 0.2 + random.nextDouble() * 0.2, type, i % 10 == 0 ? 0.5 : 0);
+            } else {
+                builder.addRotatedCube(center, 0.4, type, 0, random.nextDouble() * 90, random.nextDouble() * 90, 0);
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            builder.addLight(new Vector(-5 + i * 3, 5, -5 + i), Color.WHITE, 0.5);
+        }
+
+        assertMatchesFullRenders(builder.build(), frame -> new Camera(new Vector(-0.5 + frame * 0.05,
+                0.1 + frame * 0.01, -2 + frame * 0.1)));
+    }
+
+    @Test
+    void dollyBackMatchesFullRenders() throws Exception {
+        // The small sphere starts behind the camera and moves into view in front of the large one
+        Scene scene = new SceneBuilder()
+                .addSphere(new Vector(0, 0, 10), 4, MaterialType.RUBY, 0)
+                .addSphere(new Vector(0, 0, -0.5), 0.3, MaterialType.EMERALD, 0)
+                .addLight(new Vector(-5, 5, -5), Color.WHITE, 1)
+                .build();
+
+        assertMatchesFullRenders(scene, frame -> new Camera(new Vector(0, 0, -frame * 0.4)));
+    }
+
+    private static void assertMatchesFullRenders(Scene scene, IntFunction<Camera> cameras) throws Exception {
+        RenderSettings settings = RenderSettings.builder().width(WIDTH).height(HEIGHT).numThreads(1).build();
+        TemporalHistory history = new TemporalHistory();
+        long reused = 0;
+        try (RenderEngine engine = new RenderEngine(1)) {
+            for (int frame = 0; frame < FRAMES; frame++) {
+                Camera camera = cameras.apply(frame);
+                BufferedImage temporal = engine.render(scene, camera, settings, history).get();
+                BufferedImage full = engine.render(scene, camera, settings).get();
+
+                int wrong = countWrongPixels(temporal, full);
+                assertTrue(wrong <= MAX_WRONG_PIXELS * WIDTH * HEIGHT,
+                        "Frame " + frame + " has " + wrong + " pixels that differ from the full render");
+                reused += history.getReusedPixelCount();
+            }
+        }
+        assertTrue(reused > 0, "No pixel reused the shading of the previous frame");
+    }
+
+    private static int countWrongPixels(BufferedImage image, BufferedImage reference) {
+        int wrong = 0;
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int rgb = image.getRGB(x, y);
+                int expected = reference.getRGB(x, y);
+                for (int shift = 0; shift < 24; shift += 8) {
+                    if (Math.abs((rgb >> shift & 0xFF) - (expected >> shift & 0xFF)) > MAX_CHANNEL_ERROR) {
+                        wrong++;
+                        break;
+                    }
+                }
+            }
+        }
+        return wrong;
+    }
+}
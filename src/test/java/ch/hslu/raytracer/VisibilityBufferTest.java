@@ -0,0 +1,90 @@
+package ch.hslu.raytracer;
+
+import ch.hslu.raytracer.benchmark.ProceduralScenes;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.materials.Texture;
+import ch.hslu.raytracer.objects.RotatedCube;
+import ch.hslu.raytracer.objects.Sphere;
+import ch.hslu.raytracer.objects.Triangle;
+import ch.hslu.raytracer.scene.Camera;
+import ch.hslu.raytracer.scene.Scene;
+import ch.hslu.raytracer.scene.SceneBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VisibilityBufferTest {
+    private static final RenderSettings SETTINGS = RenderSettings.builder()
+            .width(160).height(90).maxReflectionDepth(1).numThreads(1).build();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"spheres", "cubes", "lod-cubes", "mesh", "packed-spheres", "cloud"})
+    void rasterizedImageEqualsTracedImage(String kind) throws Exception {
+        assertSameImage(ProceduralScenes.create(kind, 200, 2, 1), Camera.createDefault(), SETTINGS);
+    }
+
+    @Test
+    void primitivesAroundAndBehindCameraEqualTracedImage() throws Exception {
+        Material textured = Material.create(MaterialType.GOLD, 0).withTexture(Texture.of(checkerboard()));
+        Scene scene = new SceneBuilder()
+                .addSphere(new Vector(0, -1001, 0), 1000, MaterialType.JADE, 0)
+                .addSphere(new Vector(0.5, 0.3, 3), 0.6, MaterialType.RUBY, 0.3)
+                .addRotatedCube(new Vector(-0.8, 0, 2), 0.7, MaterialType.EMERALD, 0, 30, 45, 10)
+                .addLight(new Vector(-5, 5, -5), Color.WHITE, 1)
+                .build();
+        // A triangle reaching behind the camera, one hit edge-on and a sphere reaching beside the camera
+        scene.addObject(new Triangle(new Vector(-3, -0.8, -4), new Vector(3, -0.8, -4), new Vector(0, -0.5, 6),
+                Material.create(MaterialType.SILVER, 0)));
+        scene.addObject(new Triangle(new Vector(1, -1, 2), new Vector(1, 1, 2), new Vector(1, 0, 5),
+                Material.create(MaterialType.SILVER, 0)));
+        scene.addObject(new Sphere(new Vector(-2.5, 1, -2), 1.5, Material.create(MaterialType.PEARL, 0)));
+        scene.addObject(new Sphere(new Vector(1.5, -0.5, 4), 0.5, textured));
+        scene.addObject(new RotatedCube(new Vector(-1.5, 0.8, 4), 0.8, textured, 10, 20, 30));
+
+        assertSameImage(scene, Camera.createDefault(), SETTINGS);
+        assertSameImage(scene, Camera.createDefault(),
+                SETTINGS.toBuilder().cropWindow(new Rectangle(30, 20, 70, 40)).build());
+    }
+
+    @Test
+    void cameraInsideSphereEqualsTracedImage() throws Exception {
+        Scene scene = new SceneBuilder()
+                .addSphere(new Vector(0, 0, 0), 20, MaterialType.JADE, 0)
+                .addSphere(new Vector(0, 0, 4), 1, MaterialType.RUBY, 0)
+                .addLight(new Vector(-5, 5, -5), Color.WHITE, 1)
+                .build();
+
+        assertSameImage(scene, Camera.createDefault(), SETTINGS);
+    }
+
+    private static void assertSameImage(Scene scene, Camera camera, RenderSettings settings) throws Exception {
+        try (RenderEngine engine = new RenderEngine(1)) {
+            BufferedImage traced = engine.render(scene, camera, settings).get();
+            BufferedImage rasterized = engine.render(scene, camera,
+                    settings.toBuilder().rasterizePrimaryVisibility(true).build()).get();
+            for (int y = 0; y < traced.getHeight(); y++) {
+                for (int x = 0; x < traced.getWidth(); x++) {
+                    assertEquals(traced.getRGB(x, y), rasterized.getRGB(x, y), "Pixel " + x + ", " + y);
+                }
+            }
+        }
+    }
+
+    private static BufferedImage checkerboard() {
+        BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, ((x / 8 + y / 8) % 2 == 0) ? 0xFFFFFF : 0x3050A0);
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,80 @@
+package ch.hslu.raytracer.materials;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextureTest {
+    @Test
+    void imageFileMatchesImageInMemory(@TempDir Path directory) throws Exception {
+        // Wide enough that the file is decoded in several bands
+        BufferedImage image = randomImage(16400, 150);
+        File file = directory.resolve("texture.png").toFile();
+        ImageIO.write(image, "png", file);
+
+        try (Texture loaded = Texture.load(file, new TileCache(64L * 1024 * 1024));
+             Texture inMemory = Texture.of(image, new TileCache(64L * 1024 * 1024))) {
+            for (int level = 0; level <= 2; level++) {
+                // Every level truncates the averages of the one above, the image in memory filters only once
+                assertSameTexels(inMemory, loaded, level, level);
+            }
+        }
+    }
+
+    @Test
+    void closeEvictsTilesAndKeepsTextureUsable(@TempDir Path directory) throws Exception {
+        BufferedImage image = randomImage(200, 100);
+        File file = directory.resolve("texture.png").toFile();
+        ImageIO.write(image, "png", file);
+        TileCache cache = new TileCache(64L * 1024 * 1024);
+
+        Texture texture = Texture.load(file, cache);
+        Color before = texture.sample(0.3, 0.6, 0);
+        assertTrue(cache.getUsedBytes() > 0);
+
+        texture.close();
+        assertEquals(0, cache.getUsedBytes());
+        assertEquals(before, texture.sample(0.3, 0.6, 0));
+        texture.close();
+    }
+
+    private static void assertSameTexels(Texture expected, Texture actual, int level, int tolerance) {
+        int levelWidth = Math.max(1, expected.getWidth() >> level);
+        int levelHeight = Math.max(1, expected.getHeight() >> level);
+        double footprint = 1.5 * (1 << level) / Math.max(expected.getWidth(), expected.getHeight());
+        for (int y = 0; y < levelHeight; y++) {
+            for (int x = 0; x < levelWidth; x++) {
+                double u = (x + 0.5) / levelWidth;
+                double v = (y + 0.5) / levelHeight;
+                int rgb = expected.sample(u, v, footprint).getRGB();
+                int actualRgb = actual.sample(u, v, footprint).getRGB();
+                for (int shift = 0; shift < 24; shift += 8) {
+                    int difference = Math.abs((rgb >> shift & 0xFF) - (actualRgb >> shift & 0xFF));
+                    if (difference > tolerance) {
+                        assertEquals(rgb, actualRgb, "Texel " + x + ", " + y + " of level " + level);
+                    }
+                }
+            }
+        }
+    }
+
+    private static BufferedImage randomImage(int width, int height) {
+        Random random = new Random(3);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt(0x1000000));
+            }
+        }
+        return image;
+    }
+}
@@ -0,0 +1,62 @@
+package ch.hslu.raytracer.materials;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TileCacheTest {
+    private static final long TILE_BYTES = (long) Texture.TILE_SIZE * Texture.TILE_SIZE * Integer.BYTES;
+
+    @Test
+    void staysWithinCap() {
+        TileCache cache = new TileCache(8 * TILE_BYTES);
+        Texture texture = Texture.of(new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_RGB), cache);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            texture.sample(random.nextDouble(), random.nextDouble(), 0);
+            assertTrue(cache.getUsedBytes() <= cache.getMaxBytes(), "Cache holds " + cache.getUsedBytes() + " bytes");
+        }
+    }
+
+    @Test
+    void staysWithinCapWhenLoadedConcurrently() throws InterruptedException {
+        TileCache cache = new TileCache(8 * TILE_BYTES);
+        Texture texture = Texture.of(new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_RGB), cache);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    texture.sample(random.nextDouble(), random.nextDouble(), random.nextDouble() * 0.01);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(cache.getUsedBytes() <= cache.getMaxBytes(), "Cache holds " + cache.getUsedBytes() + " bytes");
+    }
+
+    @Test
+    void shrinkingCapEvicts() {
+        TileCache cache = new TileCache(16 * TILE_BYTES);
+        Texture texture = Texture.of(new BufferedImage(1024, 1024, BufferedImage.TYPE_INT_RGB), cache);
+        for (int y = 0; y < 4; y++) {
+            for (int x = 0; x < 4; x++) {
+                texture.sample((x + 0.5) / 4, (y + 0.5) / 4, 0);
+            }
+        }
+
+        cache.setMaxBytes(4 * TILE_BYTES);
+        assertTrue(cache.getUsedBytes() <= 4 * TILE_BYTES, "Cache holds " + cache.getUsedBytes() + " bytes");
+    }
+}
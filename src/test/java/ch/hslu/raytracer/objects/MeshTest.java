@@ -0,0 +1,142 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MeshTest {
+    private static final Vector CENTER = new Vector(0, 0, 10);
+    private static final Ray AXIS_RAY = new Ray(new Vector(0.1, 0.2, 0), new Vector(0, 0, 1));
+
+    private final Material material = Material.create(MaterialType.JADE, 0);
+    private final List<Triangle> triangles = tessellatedSphere(CENTER, 1, 64, 32);
+    private final Mesh mesh = new Mesh(triangles);
+
+    @Test
+    void levelsGetCoarser() {
+        assertTrue(mesh.getLevelCount() > 2, "Levels: " + mesh.getLevelCount());
+        assertEquals(triangles.size(), mesh.getTriangleCount(0));
+        for (int level = 1; level < mesh.getLevelCount(); level++) {
+            assertTrue(mesh.getTriangleCount(level) <= mesh.getTriangleCount(level - 1) / 2);
+        }
+    }
+
+    @Test
+    void thinRayHitsFullMesh() {
+        HitInfo hit = mesh.intersect(AXIS_RAY);
+
+        assertNotNull(hit);
+        assertEquals(0, hit.getLevel());
+        assertEquals(closestTriangleHit(AXIS_RAY).getDistance(), hit.getDistance(), 1e-12);
+    }
+
+    @Test
+    void widerFootprintsPickCoarserLevels() {
+        int previousLevel = 0;
+        for (double spread = 1e-5; spread < 1; spread *= 2) {
+            HitInfo hit = mesh.intersect(withFootprint(AXIS_RAY, spread, 0));
+            assertNotNull(hit);
+            assertTrue(hit.getLevel() >= previousLevel, "Level " + hit.getLevel() + " at spread " + spread);
+            previousLevel = hit.getLevel();
+        }
+
+        // A footprint wider than the mesh hits the sphere proxy
+        assertEquals(mesh.getLevelCount(), previousLevel);
+    }
+
+    @Test
+    void reflectionRaysAcceptCoarserLevels() {
+        boolean coarser = false;
+        for (double spread = 1e-5; spread < 1; spread *= 2) {
+            int primaryLevel = mesh.intersect(withFootprint(AXIS_RAY, spread, 0)).getLevel();
+            int reflectionLevel = mesh.intersect(withFootprint(AXIS_RAY, spread, 1)).getLevel();
+            assertTrue(reflectionLevel >= primaryLevel);
+            coarser |= reflectionLevel > primaryLevel;
+        }
+        assertTrue(coarser);
+    }
+
+    @Test
+    void raysLeavingTheMeshKeepTheLevelOfTheirHit() {
+        // Includes the proxy, which reports the level count as its level
+        for (int level = 0; level <= mesh.getLevelCount(); level++) {
+            // Starts on the near side of the level and crosses the mesh towards its far side
+            HitInfo start = intersectLevel(level);
+            Ray wide = new Ray(start, new Vector(0, 0, 1), 10, 0, 1);
+            Ray thin = new Ray(start, new Vector(0, 0, 1), 0, 0, 1);
+
+            assertEquals(level, mesh.intersect(wide).getLevel());
+            assertEquals(level, mesh.intersect(thin).getLevel());
+        }
+    }
+
+    @Test
+    void emptyMeshIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new Mesh(List.of()));
+    }
+
+    /**
+     * Finds a footprint at which the axis ray hits the given level and returns that hit.
+     */
+    private HitInfo intersectLevel(int level) {
+        for (double spread = 1e-6; spread < 1; spread *= 1.1) {
+            HitInfo hit = mesh.intersect(withFootprint(AXIS_RAY, spread, 0));
+            if (hit.getLevel() == level) {
+                return hit;
+            }
+        }
+        throw new AssertionError("No footprint hits level " + level);
+    }
+
+    private static Ray withFootprint(Ray ray, double spread, int depth) {
+        return new Ray(ray.origin(), ray.direction(), 0, spread, depth);
+    }
+
+    private HitInfo closestTriangleHit(Ray ray) {
+        HitInfo closest = null;
+        for (Triangle triangle : triangles) {
+            HitInfo hit = triangle.intersect(ray);
+            if (hit != null && (closest == null || hit.getDistance() < closest.getDistance())) {
+                closest = hit;
+            }
+        }
+        return closest;
+    }
+
+    private List<Triangle> tessellatedSphere(Vector center, double radius, int segments, int rings) {
+        List<Triangle> result = new ArrayList<>();
+        for (int ring = 0; ring < rings; ring++) {
+            for (int segment = 0; segment < segments; segment++) {
+                Vector a = spherePoint(center, radius, ring, segment, rings, segments);
+                Vector b = spherePoint(center, radius, ring + 1, segment, rings, segments);
+                Vector c = spherePoint(center, radius, ring + 1, segment + 1, rings, segments);
+                Vector d = spherePoint(center, radius, ring, segment + 1, rings, segments);
+                if (ring > 0) {
+                    result.add(new Triangle(a, b, d, material));
+                }
+                if (ring < rings - 1) {
+                    result.add(new Triangle(b, c, d, material));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Vector spherePoint(Vector center, double radius, int ring, int segment, int rings, int segments) {
+        double theta = Math.PI * ring / rings;
+        double phi = 2 * Math.PI * segment / segments;
+        return center.add(new Vector(Math.sin(theta) * Math.cos(phi), Math.cos(theta),
+                Math.sin(theta) * Math.sin(phi)).scale(radius));
+    }
+}
@@ -0,0 +1,97 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class PackedGeometryTest {
+    private static final double EPSILON = 1e-9;
+
+    private final Material material = Material.create(MaterialType.JADE, 0);
+
+    @Test
+    void hitsMatchSpheresAndTriangles() {
+        Random random = new Random(7);
+        PackedGeometry.Builder builder = PackedGeometry.builder();
+        int materialIndex = builder.addMaterial(material);
+        List<Object3D> objects = new ArrayList<>();
+        // More primitives than fit into a chunk, so rays have to pass several chunk bounds
+        for (int i = 0; i < 3000; i++) {
+            Vector center = randomPoint(random, 10);
+            double radius = 0.05 + random.nextDouble() * 0.2;
+            builder.addSphere(center, radius, materialIndex);
+            objects.add(new Sphere(center, radius, material));
+
+            Vector v0 = randomPoint(random, 10);
+            Vector v1 = v0.add(randomPoint(random, 0.5));
+            Vector v2 = v0.add(randomPoint(random, 0.5));
+            builder.addTriangle(v0, v1, v2, materialIndex);
+            objects.add(new Triangle(v0, v1, v2, material));
+        }
+        PackedGeometry packed = builder.build();
+
+        for (int i = 0; i < 2000; i++) {
+            Ray ray = new Ray(randomPoint(random, 12), randomPoint(random, 1).normalize());
+            assertSameHit(closestHit(objects, ray), packed.intersect(ray));
+        }
+    }
+
+    @Test
+    void axisParallelRayStartingOnChunkBoundsHits() {
+        // The ray runs along the x = 0 face of both chunks' bounds and touches each primitive on its edge
+        Sphere sphere = new Sphere(new Vector(1, 0, 5), 1, material);
+        Triangle triangle = new Triangle(new Vector(0, -1, 3), new Vector(2, -1, 3), new Vector(0, 1, 3), material);
+        PackedGeometry.Builder sphereBuilder = PackedGeometry.builder();
+        PackedGeometry spheres = sphereBuilder
+                .addSphere(new Vector(1, 0, 5), 1, sphereBuilder.addMaterial(material))
+                .build();
+        PackedGeometry.Builder triangleBuilder = PackedGeometry.builder();
+        PackedGeometry triangles = triangleBuilder
+                .addTriangle(new Vector(0, -1, 3), new Vector(2, -1, 3), new Vector(0, 1, 3),
+                        triangleBuilder.addMaterial(material))
+                .build();
+
+        Ray ray = new Ray(new Vector(0, 0, 0), new Vector(0, 0, 1));
+        assertSameHit(sphere.intersect(ray), spheres.intersect(ray));
+        assertSameHit(triangle.intersect(ray), triangles.intersect(ray));
+    }
+
+    private static HitInfo closestHit(List<Object3D> objects, Ray ray) {
+        HitInfo closest = null;
+        for (Object3D object : objects) {
+            HitInfo hit = object.intersect(ray);
+            if (hit != null && (closest == null || hit.getDistance() < closest.getDistance())) {
+                closest = hit;
+            }
+        }
+        return closest;
+    }
+
+    private static void assertSameHit(HitInfo expected, HitInfo actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual);
+        assertEquals(expected.getDistance(), actual.getDistance(), EPSILON);
+        Vector offset = expected.getHitPoint().subtract(actual.getHitPoint());
+        assertEquals(0, offset.dot(offset), EPSILON);
+        assertEquals(1, expected.getNormal().dot(actual.getNormal()), EPSILON);
+    }
+
+    private static Vector randomPoint(Random random, double extent) {
+        return new Vector((random.nextDouble() * 2 - 1) * extent, (random.nextDouble() * 2 - 1) * extent,
+                (random.nextDouble() * 2 - 1) * extent);
+    }
+}
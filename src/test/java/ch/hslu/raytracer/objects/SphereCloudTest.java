@@ -0,0 +1,143 @@
+package ch.hslu.raytracer.objects;
+
+import ch.hslu.raytracer.core.HitInfo;
+import ch.hslu.raytracer.core.Ray;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SphereCloudTest {
+    private static final double EPSILON = 1e-9;
+
+    private final List<Material> materials = List.of(Material.create(MaterialType.JADE, 0),
+            Material.create(MaterialType.RUBY, 0), Material.create(MaterialType.GOLD, 0));
+    private final List<Sphere> spheres = new ArrayList<>();
+    private SphereCloud cloud;
+
+    @Test
+    void randomRaysHitLikeSpheres() {
+        Random random = new Random(11);
+        createCloud(random, 5000, 10, 0.25);
+
+        for (int i = 0; i < 3000; i++) {
+            // Origins inside and around the cloud
+            Ray ray = new Ray(randomPoint(random, 14), randomPoint(random, 1).normalize());
+            assertSameHit(closestHit(ray), cloud.intersect(ray));
+        }
+    }
+
+    @Test
+    void raysThroughOverlappingSpheresHitTheClosest() {
+        Random random = new Random(14);
+        // Spheres reaching far into the neighbouring cells, where the closest hit is often not in the first cell
+        createCloud(random, 3000, 10, 1.5);
+
+        for (int i = 0; i < 3000; i++) {
+            Ray ray = new Ray(randomPoint(random, 14), randomPoint(random, 1).normalize());
+            assertSameHit(closestHit(ray), cloud.intersect(ray));
+        }
+    }
+
+    @Test
+    void axisParallelRaysHitLikeSpheres() {
+        Random random = new Random(12);
+        createCloud(random, 5000, 10, 0.25);
+        Vector[] directions = {new Vector(1, 0, 0), new Vector(-1, 0, 0), new Vector(0, 1, 0),
+                new Vector(0, -1, 0), new Vector(0, 0, 1), new Vector(0, 0, -1)};
+
+        Vector min = cloud.getBounds().min();
+        for (int i = 0; i < 3000; i++) {
+            Vector origin = randomPoint(random, 14);
+            if (i % 3 == 0) {
+                // Runs along a face of the grid bounds, or starts on it for rays along x
+                origin = new Vector(min.x(), origin.y(), origin.z());
+            }
+            Ray ray = new Ray(origin, directions[i % directions.length]);
+            assertSameHit(closestHit(ray), cloud.intersect(ray));
+        }
+    }
+
+    @Test
+    void raysOfSparseAndSingleSphereCloudsHitLikeSpheres() {
+        Random random = new Random(13);
+        for (int count : new int[]{1, 2, 20}) {
+            spheres.clear();
+            createCloud(random, count, 50, 0.25);
+            for (int i = 0; i < 500; i++) {
+                // Aim at a sphere, so most rays hit
+                Sphere target = spheres.get(random.nextInt(count));
+                Vector origin = randomPoint(random, 60);
+                Ray ray = new Ray(origin, target.getCenter().add(randomPoint(random, 0.3)).subtract(origin));
+                assertSameHit(closestHit(ray), cloud.intersect(ray));
+            }
+        }
+    }
+
+    @Test
+    void emptyCloudIsNeverHit() {
+        SphereCloud.Builder builder = SphereCloud.builder();
+        builder.addMaterial(materials.get(0));
+        SphereCloud empty = builder.build();
+
+        assertNull(empty.intersect(new Ray(new Vector(0, 0, -5), new Vector(0, 0, 1))));
+        assertNull(empty.getBounds());
+    }
+
+    private void createCloud(Random random, int count, double extent, double maxRadius) {
+        SphereCloud.Builder builder = SphereCloud.builder();
+        for (Material material : materials) {
+            builder.addMaterial(material);
+        }
+        for (int i = 0; i < count; i++) {
+            // The cloud stores floats, so the spheres to compare with use the same rounded values
+            float x = (float) ((random.nextDouble() * 2 - 1) * extent);
+            float y = (float) ((random.nextDouble() * 2 - 1) * extent);
+            float z = (float) ((random.nextDouble() * 2 - 1) * extent);
+            float radius = (float) (0.05 + random.nextDouble() * (maxRadius - 0.05));
+            int material = i % materials.size();
+            builder.addSphere(x, y, z, radius, material);
+            spheres.add(new Sphere(new Vector(x, y, z), radius, materials.get(material)));
+        }
+        cloud = builder.build();
+        assertEquals(count, cloud.getSphereCount());
+    }
+
+    private HitInfo closestHit(Ray ray) {
+        HitInfo closest = null;
+        for (Sphere sphere : spheres) {
+            HitInfo hit = sphere.intersect(ray);
+            if (hit != null && (closest == null || hit.getDistance() < closest.getDistance())) {
+                closest = hit;
+            }
+        }
+        return closest;
+    }
+
+    private static void assertSameHit(HitInfo expected, HitInfo actual) {
+        if (expected == null) {
+            assertNull(actual);
+            return;
+        }
+        assertNotNull(actual, "Missed the sphere at distance " + expected.getDistance());
+        assertEquals(expected.getDistance(), actual.getDistance(), EPSILON);
+        Vector offset = expected.getHitPoint().subtract(actual.getHitPoint());
+        assertEquals(0, offset.dot(offset), EPSILON);
+        assertEquals(1, expected.getNormal().dot(actual.getNormal()), EPSILON);
+        assertSame(expected.getMaterial(), actual.getMaterial());
+    }
+
+    private static Vector randomPoint(Random random, double extent) {
+        return new Vector((random.nextDouble() * 2 - 1) * extent, (random.nextDouble() * 2 - 1) * extent,
+                (random.nextDouble() * 2 - 1) * extent);
+    }
+}
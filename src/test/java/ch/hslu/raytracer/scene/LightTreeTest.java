@@ -0,0 +1,102 @@
+package ch.hslu.raytracer.scene;
+
+import ch.hslu.raytracer.core.Vector;
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LightTreeTest {
+    private static final int MAX_NUDGES = 1000; // Steps past a leaf boundary the summed probabilities fell short of
+
+    @Test
+    void probabilitiesOfAllLightsSumToOne() {
+        Random random = new Random(5);
+        List<Light> lights = randomLights(random, 100);
+        LightTree tree = new LightTree(lights);
+
+        for (int i = 0; i < 20; i++) {
+            Vector point = i == 0 ? lights.get(0).position() : randomPoint(random, 30);
+            assertProbabilitiesSumToOne(tree, lights, point);
+        }
+    }
+
+    @Test
+    void singleLightIsAlwaysPicked() {
+        Light light = new Light(new Vector(1, 2, 3), Color.WHITE, 1);
+        LightTree tree = new LightTree(List.of(light));
+
+        LightTree.Sample sample = tree.sample(new Vector(0, 0, 0), 0.7);
+        assertEquals(light, sample.light());
+        assertEquals(1.0, sample.probability());
+    }
+
+    @Test
+    void treeRebuiltFromLeavesSamplesTheSameLights() {
+        Random random = new Random(6);
+        LightTree tree = new LightTree(randomLights(random, 37));
+        LightTree rebuilt = LightTree.ofLeaves(tree.getLeaves());
+
+        for (int i = 0; i < 1000; i++) {
+            Vector point = randomPoint(random, 30);
+            double number = random.nextDouble();
+            assertEquals(tree.sample(point, number), rebuilt.sample(point, number));
+        }
+    }
+
+    @Test
+    void emptyLightListIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LightTree(List.of()));
+    }
+
+    /**
+     * Sweeps the random number over [0, 1). The leaves split the range into consecutive intervals
+     * as wide as their probabilities, so stepping by the probability of each sample visits every light once.
+     */
+    private static void assertProbabilitiesSumToOne(LightTree tree, List<Light> lights, Vector point) {
+        Set<Light> visited = new HashSet<>();
+        double total = 0;
+        double number = 0;
+        Light previous = null;
+        int nudges = 0;
+        while (number < 1) {
+            LightTree.Sample sample = tree.sample(point, number);
+            if (sample.light().equals(previous)) {
+                assertTrue(++nudges < MAX_NUDGES, "Sweep is stuck at " + number);
+                number = Math.nextUp(number);
+                continue;
+            }
+            assertTrue(sample.probability() > 0 && sample.probability() <= 1);
+            assertTrue(visited.add(sample.light()), "Light sampled in two intervals: " + sample.light());
+            total += sample.probability();
+            number += sample.probability();
+            previous = sample.light();
+        }
+
+        assertEquals(lights.size(), visited.size());
+        assertEquals(1.0, total, 1e-9);
+    }
+
+    private static List<Light> randomLights(Random random, int count) {
+        List<Light> lights = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Color color = new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+            // Includes lights of zero intensity, which are still picked with a small probability
+            lights.add(new Light(randomPoint(random, 20), color, i % 10 == 0 ? 0 : random.nextDouble()));
+        }
+        return lights;
+    }
+
+    private static Vector randomPoint(Random random, double extent) {
+        return new Vector((random.nextDouble() * 2 - 1) * extent, (random.nextDouble() * 2 - 1) * extent,
+                (random.nextDouble() * 2 - 1) * extent);
+    }
+}
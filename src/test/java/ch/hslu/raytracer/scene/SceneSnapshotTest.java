@@ -0,0 +1,143 @@
+package ch.hslu.raytracer.scene;
+
+import ch.hslu.raytracer.RayTracer;
+import ch.hslu.raytracer.RenderSettings;
+import ch.hslu.raytracer.benchmark.ProceduralScenes;
+import ch.hslu.raytracer.core.Vector;
+import ch.hslu.raytracer.materials.Material;
+import ch.hslu.raytracer.materials.MaterialType;
+import ch.hslu.raytracer.materials.Texture;
+import ch.hslu.raytracer.objects.Sphere;
+import ch.hslu.raytracer.objects.Triangle;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SceneSnapshotTest {
+    private static final RenderSettings SETTINGS = RenderSettings.builder()
+            .width(160).height(90).maxReflectionDepth(2).numThreads(1).build();
+
+    @TempDir
+    Path directory;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"spheres", "cubes", "packed-spheres", "packed-mesh"})
+    void loadedSceneRendersLikeOriginal(String kind) throws Exception {
+        Scene scene = ProceduralScenes.create(kind, 300, 3, 1);
+        Path file = directory.resolve(kind + ".snapshot");
+        long hash = SceneSnapshot.hash(kind, 300, 3, 1);
+
+        SceneSnapshot.write(scene, hash, file);
+        Scene loaded = SceneSnapshot.load(file, hash);
+
+        assertNotNull(loaded);
+        assertEquals(scene.getLights(), loaded.getLights());
+        assertSameImage(render(scene), render(loaded));
+    }
+
+    @Test
+    void loadedSceneKeepsLightHierarchy() throws Exception {
+        Random random = new Random(4);
+        SceneBuilder builder = new SceneBuilder()
+                .addSphere(new Vector(0, -1001, 0), 1000, MaterialType.JADE, 0)
+                .addRotatedCube(new Vector(-0.8, 0, 2), 0.7, MaterialType.EMERALD, 0, 30, 45, 10)
+                .withLightSampling(4);
+        for (int i = 0; i < 50; i++) {
+            builder.addLight(new Vector(random.nextDouble() * 20 - 10, random.nextDouble() * 10,
+                    random.nextDouble() * 20 - 10), Color.WHITE, random.nextDouble());
+        }
+        Scene scene = builder.build();
+        scene.addObject(new Triangle(new Vector(-1, 0, 3), new Vector(1, 0, 3), new Vector(0, 1, 3),
+                Material.create(MaterialType.RUBY, 0.2)));
+        Path file = directory.resolve("lights.snapshot");
+
+        SceneSnapshot.write(scene, 7, file);
+        Scene loaded = SceneSnapshot.load(file, 7);
+
+        assertNotNull(loaded);
+        assertEquals(scene.getLightSamples(), loaded.getLightSamples());
+        assertEquals(scene.getMaxReflectionDepth(), loaded.getMaxReflectionDepth());
+        assertEquals(scene.buildLightTree().getLeaves(), loaded.buildLightTree().getLeaves());
+    }
+
+    @Test
+    void staleOrMissingSnapshotIsIgnored() throws Exception {
+        Path file = directory.resolve("scene.snapshot");
+        assertNull(SceneSnapshot.load(file, 1));
+
+        SceneSnapshot.write(ProceduralScenes.create("spheres", 50, 2, 1), 1, file);
+        assertNotNull(SceneSnapshot.load(file, 1));
+        assertNull(SceneSnapshot.load(file, 2));
+
+        Files.write(file, new byte[]{1, 2, 3});
+        assertNull(SceneSnapshot.load(file, 1));
+    }
+
+    @Test
+    void staleSnapshotIsRebuilt() throws Exception {
+        Path file = directory.resolve("scene.snapshot");
+        long staleHash = SceneSnapshot.hash("spheres", 50);
+        long hash = SceneSnapshot.hash("spheres", 60);
+        SceneSnapshot.write(ProceduralScenes.create("spheres", 50, 2, 1), staleHash, file);
+        AtomicInteger builds = new AtomicInteger();
+
+        Scene scene = SceneSnapshot.loadOrBuild(file, hash, () -> {
+            builds.incrementAndGet();
+            return ProceduralScenes.create("spheres", 60, 2, 1);
+        });
+        assertEquals(1, builds.get());
+        assertSameImage(render(ProceduralScenes.create("spheres", 60, 2, 1)), render(scene));
+
+        // The rebuilt snapshot is valid for the new hash only
+        SceneSnapshot.loadOrBuild(file, hash, () -> {
+            builds.incrementAndGet();
+            return ProceduralScenes.create("spheres", 60, 2, 1);
+        });
+        assertEquals(1, builds.get());
+        assertNull(SceneSnapshot.load(file, staleHash));
+    }
+
+    @Test
+    void sceneThatCannotBeStoredIsReturnedAsBuilt() {
+        Scene cloud = ProceduralScenes.create("cloud", 100, 2, 1);
+
+        assertSame(cloud, SceneSnapshot.loadOrBuild(directory.resolve("cloud.snapshot"), 1, () -> cloud));
+    }
+
+    @Test
+    void texturedMaterialIsRejected() {
+        Scene scene = new Scene();
+        scene.addObject(new Sphere(new Vector(0, 0, 3), 1,
+                Material.create(MaterialType.GOLD, 0).withTexture(Texture.of(new BufferedImage(4, 4,
+                        BufferedImage.TYPE_INT_RGB)))));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> SceneSnapshot.write(scene, 1, directory.resolve("textured.snapshot")));
+    }
+
+    private static BufferedImage render(Scene scene) {
+        return new RayTracer().render(scene, Camera.createDefault(), SETTINGS);
+    }
+
+    private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+        for (int y = 0; y < expected.getHeight(); y++) {
+            for (int x = 0; x < expected.getWidth(); x++) {
+                assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), "Pixel " + x + ", " + y);
+            }
+        }
+    }
+}